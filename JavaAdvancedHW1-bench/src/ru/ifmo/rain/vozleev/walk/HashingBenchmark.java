@@ -0,0 +1,214 @@
+package ru.ifmo.rain.vozleev.walk;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hashes a whole fixture per operation with combinations of I/O strategy, buffer size, thread count and hash function.
+ * <p>
+ * Default parameters are 24 combinations, about 16 minutes of measurement. Wider sweeps are selected with JMH {@code -p}, for example
+ * {@code -p fixture=HUGE -p io=STREAM,CHANNEL -p bufferSize=8192,65536,1048576 -p threads=1,4,16 -p hash=fnv64,sha256}.
+ * <p>
+ * Run with {@link #main}, which adds the GC profiler to any JMH command line options,
+ * so allocation rate is reported next to throughput. The {@code bytes} counter gives throughput in bytes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class HashingBenchmark {
+
+    /**
+     * The way file contents reach the hash function.
+     */
+    public enum Io {
+        /**
+         * {@link InputStream} reads into a heap array.
+         */
+        STREAM {
+            @Override
+            void hash(Path file, HashFunction function, Worker worker) throws IOException {
+                try (InputStream in = Files.newInputStream(file)) {
+                    for (int read = in.read(worker.array); read != -1; read = in.read(worker.array)) {
+                        function.update(ByteBuffer.wrap(worker.array, 0, read));
+                        worker.bytes += read;
+                    }
+                }
+            }
+        },
+        /**
+         * {@link FileChannel} reads into a direct buffer.
+         */
+        CHANNEL {
+            @Override
+            void hash(Path file, HashFunction function, Worker worker) throws IOException {
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                    ByteBuffer buffer = worker.buffer;
+                    buffer.clear();
+                    for (int read = channel.read(buffer); read != -1; read = channel.read(buffer)) {
+                        buffer.flip();
+                        function.update(buffer);
+                        buffer.clear();
+                        worker.bytes += read;
+                    }
+                }
+            }
+        },
+        /**
+         * The file is mapped in {@link FileHasher#MAP_WINDOW} windows, buffer size is ignored.
+         */
+        MMAP {
+            @Override
+            void hash(Path file, HashFunction function, Worker worker) throws IOException {
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                    long size = channel.size();
+                    for (long position = 0; position < size; position += FileHasher.MAP_WINDOW) {
+                        function.update(channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(FileHasher.MAP_WINDOW, size - position)));
+                    }
+                    worker.bytes += size;
+                }
+            }
+        },
+        /**
+         * {@link FileHasher#hash}, the strategy {@link Walk} uses, buffer size is ignored.
+         */
+        WALK {
+            @Override
+            void hash(Path file, HashFunction function, Worker worker) throws IOException {
+                FileHasher.hash(file, function);
+                worker.bytes += Probe.current().bytes;
+                Probe.current().reset();
+            }
+        };
+
+        abstract void hash(Path file, HashFunction function, Worker worker) throws IOException;
+    }
+
+    private static class Worker {
+        private final HashFunction function;
+        private final byte[] array;
+        private final ByteBuffer buffer;
+        private final byte[] digest;
+        private long bytes;
+
+        private Worker(HashAlgorithm algorithm, int bufferSize) {
+            function = algorithm.create();
+            array = new byte[bufferSize];
+            buffer = ByteBuffer.allocateDirect(bufferSize);
+            digest = new byte[function.length()];
+        }
+    }
+
+    /**
+     * Bytes hashed per second.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Counters {
+        public long bytes;
+    }
+
+    @Param({"TINY", "MIXED"})
+    public WalkFixtures fixture;
+
+    @Param({"CHANNEL", "MMAP", "WALK"})
+    public Io io;
+
+    @Param({"65536"})
+    public int bufferSize;
+
+    @Param({"1", "4"})
+    public int threads;
+
+    @Param({"fnv32", "xxhash64"})
+    public String hash;
+
+    private List<Path> files;
+    private ExecutorService executor;
+    private Worker[] workers;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        files = fixture.files();
+        HashAlgorithm algorithm = HashAlgorithm.forName(hash);
+        executor = Executors.newFixedThreadPool(threads);
+        workers = new Worker[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Worker(algorithm, bufferSize);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    public void hashFixture(Counters counters, Blackhole blackhole) throws Exception {
+        AtomicInteger next = new AtomicInteger();
+        List<Future<?>> tasks = new ArrayList<>();
+        for (Worker worker : workers) {
+            tasks.add(executor.submit(() -> {
+                for (int i = next.getAndIncrement(); i < files.size(); i = next.getAndIncrement()) {
+                    worker.function.reset();
+                    io.hash(files.get(i), worker.function, worker);
+                    worker.function.digest(worker.digest);
+                    blackhole.consume(worker.digest);
+                }
+                return null;
+            }));
+        }
+        for (Future<?> task : tasks) {
+            task.get();
+        }
+        for (Worker worker : workers) {
+            counters.bytes += worker.bytes;
+            worker.bytes = 0;
+        }
+    }
+
+    /**
+     * Runs the benchmarks of this module with the GC profiler, arguments are JMH command line options.
+     */
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .include("ru\\.ifmo\\.rain\\.vozleev\\.walk\\..*Benchmark")
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
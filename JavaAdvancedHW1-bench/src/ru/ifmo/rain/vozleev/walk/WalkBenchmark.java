@@ -0,0 +1,71 @@
+package ru.ifmo.rain.vozleev.walk;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs {@link Walk} end to end over a fixture manifest, so reading the input and writing the output are measured too.
+ * {@code depth} above zero selects the asynchronous engine.
+ * Other fixtures, thread counts and hash functions are selected with JMH {@code -p}, for example {@code -p fixture=HUGE}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class WalkBenchmark {
+
+    @Param({"TINY", "MIXED"})
+    public WalkFixtures fixture;
+
+    @Param({"1", "4"})
+    public int threads;
+
+    @Param({"0", "32"})
+    public int depth;
+
+    @Param({"fnv32", "xxhash64"})
+    public String hash;
+
+    private Path manifest;
+    private Path output;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        manifest = fixture.manifest();
+        output = Files.createTempFile("walk-bench-output", ".txt");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(manifest);
+        Files.deleteIfExists(output);
+    }
+
+    @Benchmark
+    public void walk() {
+        if (depth > 0) {
+            Walk.main(new String[]{"--threads", Integer.toString(threads), "--async", Integer.toString(depth),
+                    "--hash", hash, manifest.toString(), output.toString()});
+        } else {
+            Walk.main(new String[]{"--threads", Integer.toString(threads), "--hash", hash, manifest.toString(), output.toString()});
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package ru.ifmo.rain.vozleev.walk;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Generated file sets the benchmarks hash.
+ * <p>
+ * Fixtures are written once into {@code walk.bench.dir} (a directory in {@code java.io.tmpdir} by default)
+ * and reused by later runs. Size of the huge files is taken from {@code walk.bench.huge}, {@code 2G} by default.
+ */
+public enum WalkFixtures {
+    /**
+     * 20000 files of at most 4 KiB.
+     */
+    TINY {
+        @Override
+        void generate(Path directory, Random random) throws IOException {
+            for (int i = 0; i < 20_000; i++) {
+                write(directory.resolve(String.format("%02d/%05d", i % 100, i)), random.nextInt(4097), random);
+            }
+        }
+    },
+    /**
+     * 2000 files with log-uniform sizes from 1 KiB to 4 MiB, about 1 GiB in total.
+     */
+    MIXED {
+        @Override
+        void generate(Path directory, Random random) throws IOException {
+            for (int i = 0; i < 2_000; i++) {
+                write(directory.resolve(String.format("%02d/%04d", i % 20, i)), (long) Math.pow(2, 10 + 12 * random.nextDouble()), random);
+            }
+        }
+    },
+    /**
+     * Four files of {@code walk.bench.huge} bytes. Not in the default parameters of the benchmarks,
+     * it takes 8 GiB of disk with the default size.
+     */
+    HUGE {
+        @Override
+        void generate(Path directory, Random random) throws IOException {
+            long size = parseSize(System.getProperty("walk.bench.huge", "2G"));
+            for (int i = 0; i < 4; i++) {
+                write(directory.resolve(Integer.toString(i)), size, random);
+            }
+        }
+    };
+
+    private static final String COMPLETE = ".complete";
+    private static final int BLOCK = 1 << 20;
+
+    abstract void generate(Path directory, Random random) throws IOException;
+
+    /**
+     * Returns files of the fixture in a stable order, generating them first if needed.
+     */
+    List<Path> files() throws IOException {
+        Path directory = Paths.get(System.getProperty("walk.bench.dir", Paths.get(System.getProperty("java.io.tmpdir"), "walk-bench").toString()))
+                .resolve(name().toLowerCase());
+        Path complete = directory.resolve(COMPLETE);
+        if (Files.notExists(complete)) {
+            Files.createDirectories(directory);
+            generate(directory, new Random(name().hashCode()));
+            Files.write(complete, new byte[0]);
+        }
+        try (Stream<Path> walk = Files.walk(directory)) {
+            return walk.filter(Files::isRegularFile)
+                    .filter(file -> !file.getFileName().toString().equals(COMPLETE))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Writes a manifest listing the files, one per line, as {@link Walk} expects it.
+     */
+    Path manifest() throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (Path file : files()) {
+            lines.add(file.toString());
+        }
+        Path manifest = Files.createTempFile("walk-bench-" + name().toLowerCase(), ".txt");
+        Files.write(manifest, lines, StandardCharsets.UTF_8);
+        return manifest;
+    }
+
+    private static void write(Path file, long size, Random random) throws IOException {
+        Files.createDirectories(file.getParent());
+        byte[] block = new byte[BLOCK];
+        random.nextBytes(block);
+        try (OutputStream out = Files.newOutputStream(file)) {
+            for (long left = size; left > 0; left -= BLOCK) {
+                block[0]++;
+                out.write(block, 0, (int) Math.min(BLOCK, left));
+            }
+        }
+    }
+
+    private static long parseSize(String value) {
+        int suffix = "KMG".indexOf(Character.toUpperCase(value.charAt(value.length() - 1)));
+        return suffix < 0 ? Long.parseLong(value) : Long.parseLong(value.substring(0, value.length() - 1)) << 10 * (suffix + 1);
+    }
+}
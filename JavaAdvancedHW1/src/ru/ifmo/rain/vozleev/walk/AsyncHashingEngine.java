@@ -0,0 +1,208 @@
+package ru.ifmo.rain.vozleev.walk;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.EnumSet;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Hashes submitted files with up to {@code depth} reads in flight and writes the result lines in submission order.
+ * <p>
+ * Every file being hashed owns one of {@code depth} pooled direct buffers and has one outstanding read
+ * on an {@link AsynchronousFileChannel}. Completed buffers are handed to a small pool of hashing threads,
+ * which issue the next read of the file. Where the platform has no native asynchronous file I/O
+ * (Linux, for one) the JDK performs reads on the channel executor, so that executor gets {@code depth} threads.
+ */
+class AsyncHashingEngine implements FileSink, AutoCloseable {
+
+    private static final int BUFFER_SIZE = 256 << 10;
+
+    private final DigestSink output;
+    private final HashAlgorithm algorithm;
+    private final WalkStats stats;
+    private final int length;
+    private final ExecutorService io;
+    private final ExecutorService hashers;
+    private final BlockingQueue<ByteBuffer> buffers;
+    private final Queue<HashFunction> functions = new ConcurrentLinkedQueue<>();
+    private final Job[] window;
+    private int head;
+    private int size;
+
+    /**
+     * Every file is recorded to {@code stats} unless it is {@code null}.
+     */
+    AsyncHashingEngine(int threads, int depth, DigestSink output, HashAlgorithm algorithm, WalkStats stats) {
+        this.output = output;
+        this.algorithm = algorithm;
+        this.stats = stats;
+        this.length = algorithm.create().length();
+        this.io = Executors.newFixedThreadPool(depth);
+        this.hashers = Executors.newFixedThreadPool(threads);
+        this.buffers = new ArrayBlockingQueue<>(depth);
+        for (int i = 0; i < depth; i++) {
+            buffers.add(ByteBuffer.allocateDirect(BUFFER_SIZE));
+        }
+        this.window = new Job[2 * depth];
+        for (int i = 0; i < window.length; i++) {
+            window[i] = new Job();
+        }
+    }
+
+    private class Job implements CompletionHandler<Integer, Void> {
+        private final byte[] digest = new byte[length];
+        private String file;
+        private AsynchronousFileChannel channel;
+        private ByteBuffer buffer;
+        private HashFunction function;
+        private long position;
+        private long started;
+        private boolean failed;
+        private CompletableFuture<Void> done;
+
+        private void start(String file, ByteBuffer buffer) {
+            this.file = file;
+            this.buffer = buffer;
+            this.position = 0;
+            this.started = System.nanoTime();
+            this.done = new CompletableFuture<>();
+            HashFunction pooled = functions.poll();
+            function = pooled != null ? pooled : algorithm.create();
+            function.reset();
+            buffer.clear();
+            try {
+                channel = AsynchronousFileChannel.open(Paths.get(file), EnumSet.of(StandardOpenOption.READ), io);
+            } catch (IOException | InvalidPathException e) {
+                fail(e);
+                return;
+            }
+            read();
+        }
+
+        private void read() {
+            try {
+                channel.read(buffer, position, null, this);
+            } catch (RuntimeException e) {
+                fail(new IOException("Can't read " + file, e));
+            }
+        }
+
+        @Override
+        public void completed(Integer read, Void attachment) {
+            try {
+                hashers.execute(() -> consume(read));
+            } catch (RejectedExecutionException e) {
+                fail(new IOException("Can't hash " + file, e));
+            }
+        }
+
+        @Override
+        public void failed(Throwable e, Void attachment) {
+            fail(e instanceof Exception ? (Exception) e : new IOException(e));
+        }
+
+        private void consume(int read) {
+            if (read == -1) {
+                function.digest(digest);
+                if (stats != null) {
+                    stats.record(file, System.nanoTime() - started, position);
+                }
+                finish(false);
+                return;
+            }
+            buffer.flip();
+            function.update(buffer);
+            buffer.clear();
+            position += read;
+            read();
+        }
+
+        private void fail(Exception e) {
+            if (stats != null) {
+                stats.error(e);
+            }
+            finish(true);
+        }
+
+        private void finish(boolean failed) {
+            this.failed = failed;
+            if (failed) {
+                System.err.println("ERROR! File not found: " + file);
+            }
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                }
+                channel = null;
+            }
+            functions.add(function);
+            buffers.add(buffer);
+            function = null;
+            buffer = null;
+            done.complete(null);
+        }
+    }
+
+    @Override
+    public void submit(String file) throws IOException {
+        if (size == window.length) {
+            writeHead();
+        }
+        ByteBuffer buffer;
+        try {
+            buffer = buffers.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a buffer: " + e.getMessage());
+        }
+        Job job = window[(head + size) % window.length];
+        size++;
+        job.start(file, buffer);
+    }
+
+    private void writeHead() throws IOException {
+        Job job = window[head];
+        head = (head + 1) % window.length;
+        size--;
+        try {
+            job.done.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for hash: " + e.getMessage());
+        } catch (ExecutionException e) {
+            throw new IOException("Hashing failed: " + e.getCause().getMessage(), e.getCause());
+        }
+        output.write(job.failed ? null : job.digest, length, job.file);
+        job.file = null;
+    }
+
+    /**
+     * Writes all pending lines and stops the threads.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            while (size > 0) {
+                writeHead();
+            }
+        } finally {
+            hashers.shutdownNow();
+            io.shutdownNow();
+        }
+    }
+}
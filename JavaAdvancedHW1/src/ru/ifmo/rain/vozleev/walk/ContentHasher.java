@@ -0,0 +1,11 @@
+package ru.ifmo.rain.vozleev.walk;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Strategy that feeds (a part of) file contents to a freshly reset hash function.
+ */
+interface ContentHasher {
+    void hash(Path file, HashFunction function) throws IOException;
+}
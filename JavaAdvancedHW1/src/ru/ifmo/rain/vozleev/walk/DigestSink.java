@@ -0,0 +1,13 @@
+package ru.ifmo.rain.vozleev.walk;
+
+import java.io.IOException;
+
+/**
+ * Consumer of hashing results, called by {@link HashingEngine} in submission order.
+ */
+interface DigestSink {
+    /**
+     * @param digest digest of the file in its first {@code length} bytes, or {@code null} if the file could not be hashed
+     */
+    void write(byte[] digest, int length, String file) throws IOException;
+}
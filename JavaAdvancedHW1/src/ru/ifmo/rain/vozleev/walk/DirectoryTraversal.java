@@ -0,0 +1,124 @@
+package ru.ifmo.rain.vozleev.walk;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Expands directories into the files they contain and passes them to a {@link FileSink}.
+ * <p>
+ * Files are submitted in depth-first order with entries of every directory sorted by name,
+ * so the output does not depend on the scheduling. Listings of the next {@code FETCH_AHEAD} subdirectories
+ * are forked to a pool ahead of the walk, so reading the tree runs in parallel with hashing. Only the listings
+ * of directories along the current path and at most {@code FETCH_AHEAD} fetched ones in each of them
+ * are kept in memory.
+ */
+class DirectoryTraversal implements AutoCloseable {
+
+    private static final int FETCH_AHEAD = 8;
+
+    private final ForkJoinPool pool;
+    private final FileSink sink;
+
+    DirectoryTraversal(int threads, FileSink sink) {
+        this.pool = new ForkJoinPool(threads);
+        this.sink = sink;
+    }
+
+    private static class Entry {
+        private final Path path;
+        private final boolean directory;
+
+        private Entry(Path path) {
+            this.path = path;
+            this.directory = Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS);
+        }
+    }
+
+    private static List<Entry> list(Path directory) {
+        List<Entry> entries = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path child : stream) {
+                entries.add(new Entry(child));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        entries.sort(Comparator.comparing(entry -> entry.path.getFileName().toString()));
+        return entries;
+    }
+
+    private ForkJoinTask<List<Entry>> fork(Path directory) {
+        return pool.submit(() -> list(directory));
+    }
+
+    /**
+     * Submits the file itself or, for a directory, every file inside it.
+     */
+    void submit(String file) throws IOException {
+        Path path;
+        try {
+            path = Paths.get(file);
+        } catch (InvalidPathException e) {
+            sink.submit(file);
+            return;
+        }
+        if (Files.isDirectory(path)) {
+            walk(path, fork(path));
+        } else {
+            sink.submit(file);
+        }
+    }
+
+    private void walk(Path directory, ForkJoinTask<List<Entry>> listing) throws IOException {
+        List<Entry> entries;
+        try {
+            entries = listing.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while listing " + directory);
+        } catch (ExecutionException e) {
+            System.err.println("ERROR! Can't read directory: " + directory);
+            return;
+        }
+
+        List<Path> subdirectories = new ArrayList<>();
+        for (Entry entry : entries) {
+            if (entry.directory) {
+                subdirectories.add(entry.path);
+            }
+        }
+
+        Deque<ForkJoinTask<List<Entry>>> fetched = new ArrayDeque<>();
+        int forked = 0;
+        for (Entry entry : entries) {
+            if (entry.directory) {
+                while (forked < subdirectories.size() && fetched.size() < FETCH_AHEAD) {
+                    fetched.add(fork(subdirectories.get(forked++)));
+                }
+                walk(entry.path, fetched.poll());
+            } else {
+                sink.submit(entry.path.toString());
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        pool.shutdownNow();
+    }
+}
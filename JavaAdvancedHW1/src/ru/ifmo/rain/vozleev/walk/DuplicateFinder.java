@@ -0,0 +1,135 @@
+package ru.ifmo.rain.vozleev.walk;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds files with equal contents.
+ * <p>
+ * Files are grouped by size first. Groups of files larger than {@code 2 * EDGE} bytes are split
+ * by the hash of their first and last {@code EDGE} bytes, and only files that are still tied are hashed completely
+ * with the given {@link ContentHasher}.
+ * Every group of duplicates is written as {@code hash path} lines followed by an empty line,
+ * groups go in order of their first file in the input.
+ */
+class DuplicateFinder implements FileSink {
+
+    static final int EDGE = 64 << 10;
+
+    private final int threads;
+    private final HashAlgorithm algorithm;
+    private final HashCache cache;
+    private final ContentHasher hasher;
+    private final WalkStats stats;
+    private final Map<Long, List<Candidate>> bySize = new HashMap<>();
+    private int submitted;
+
+    private static class Candidate {
+        private final int index;
+        private final String file;
+        private final long size;
+        private byte[] digest;
+
+        private Candidate(int index, String file, long size) {
+            this.index = index;
+            this.file = file;
+            this.size = size;
+        }
+    }
+
+    DuplicateFinder(int threads, HashAlgorithm algorithm, HashCache cache, ContentHasher hasher, WalkStats stats) {
+        this.threads = threads;
+        this.algorithm = algorithm;
+        this.cache = cache;
+        this.hasher = hasher;
+        this.stats = stats;
+    }
+
+    @Override
+    public void submit(String file) {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(Paths.get(file), BasicFileAttributes.class);
+        } catch (IOException | InvalidPathException e) {
+            System.err.println("ERROR! File not found: " + file);
+            if (stats != null) {
+                stats.error(e);
+            }
+            return;
+        }
+        if (attributes.isRegularFile()) {
+            bySize.computeIfAbsent(attributes.size(), size -> new ArrayList<>()).add(new Candidate(submitted++, file, attributes.size()));
+        }
+    }
+
+    /**
+     * Hashes the candidates and writes groups of duplicates.
+     */
+    void write(ManifestWriter output) throws IOException {
+        List<List<Candidate>> sampled = new ArrayList<>();
+        List<List<Candidate>> whole = new ArrayList<>();
+        for (List<Candidate> group : bySize.values()) {
+            if (group.size() > 1) {
+                (group.get(0).size > 2L * EDGE ? sampled : whole).add(group);
+            }
+        }
+        bySize.clear();
+
+        ContentHasher edges = (file, function) -> FileHasher.hashEdges(file, function, EDGE);
+        whole.addAll(split(sampled, sink -> new HashingEngine(threads, sink, algorithm, edges)));
+        List<List<Candidate>> duplicates = split(whole, sink -> new HashingEngine(threads, sink, algorithm, cache, hasher, stats));
+
+        duplicates.sort(Comparator.comparingInt(group -> group.get(0).index));
+        int length = algorithm.create().length();
+        for (List<Candidate> group : duplicates) {
+            for (Candidate candidate : group) {
+                output.write(candidate.digest, length, candidate.file);
+            }
+            output.newLine();
+        }
+    }
+
+    private interface HashingEngineFactory {
+        HashingEngine create(DigestSink sink);
+    }
+
+    private static List<List<Candidate>> split(List<List<Candidate>> groups, HashingEngineFactory factory) throws IOException {
+        List<Candidate> candidates = new ArrayList<>();
+        groups.forEach(candidates::addAll);
+        Iterator<Candidate> results = candidates.iterator();
+        try (HashingEngine engine = factory.create((digest, length, file) ->
+                results.next().digest = digest == null ? null : Arrays.copyOf(digest, length))) {
+            for (Candidate candidate : candidates) {
+                engine.submit(candidate.file);
+            }
+        }
+
+        List<List<Candidate>> split = new ArrayList<>();
+        for (List<Candidate> group : groups) {
+            Map<ByteBuffer, List<Candidate>> byDigest = new LinkedHashMap<>();
+            for (Candidate candidate : group) {
+                if (candidate.digest != null) {
+                    byDigest.computeIfAbsent(ByteBuffer.wrap(candidate.digest), digest -> new ArrayList<>()).add(candidate);
+                }
+            }
+            for (List<Candidate> tied : byDigest.values()) {
+                if (tied.size() > 1) {
+                    split.add(tied);
+                }
+            }
+        }
+        return split;
+    }
+}
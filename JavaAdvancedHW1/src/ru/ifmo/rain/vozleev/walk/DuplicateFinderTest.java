@@ -0,0 +1,103 @@
+package ru.ifmo.rain.vozleev.walk;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Checks groups written by {@link DuplicateFinder}.
+ */
+public class DuplicateFinderTest {
+    private static final HashAlgorithm ALGORITHM = HashAlgorithm.XXHASH64;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void test01_groups() throws IOException {
+        List<String> files = Arrays.asList(
+                file("a1", "alpha"), file("b1", "bravo"), file("c", "charlie"),
+                file("a2", "alpha"), file("b2", "bravo"), file("a3", "alpha"), file("empty1", ""), file("empty2", ""));
+        Assert.assertEquals(Arrays.asList(
+                Arrays.asList("a1", "a2", "a3"),
+                Arrays.asList("b1", "b2"),
+                Arrays.asList("empty1", "empty2")
+        ), groups(files, 1));
+    }
+
+    @Test
+    public void test02_sameSizeDifferentContents() throws IOException {
+        List<String> files = Arrays.asList(file("a", "abc"), file("b", "abd"), file("c", "abe"));
+        Assert.assertEquals(List.of(), groups(files, 2));
+    }
+
+    @Test
+    public void test03_sameEdges() throws IOException {
+        // Files larger than 2 * EDGE that differ only in the middle pass the edge check and must be split by full hashes
+        byte[] contents = new byte[3 * DuplicateFinder.EDGE];
+        Arrays.fill(contents, (byte) 'x');
+        List<String> files = new ArrayList<>();
+        files.add(file("x1", contents));
+        files.add(file("x2", contents));
+        contents[contents.length / 2] = 'y';
+        files.add(file("y1", contents));
+        files.add(file("y2", contents));
+        contents[0] = 'z';
+        files.add(file("z", contents));
+        Assert.assertEquals(Arrays.asList(Arrays.asList("x1", "x2"), Arrays.asList("y1", "y2")), groups(files, 3));
+    }
+
+    @Test
+    public void test04_missingFiles() throws IOException {
+        List<String> files = Arrays.asList(file("a", "same"), folder.getRoot().toPath().resolve("missing").toString(), file("b", "same"));
+        Assert.assertEquals(List.of(Arrays.asList("a", "b")), groups(files, 1));
+    }
+
+    private String file(String name, String contents) throws IOException {
+        return Files.writeString(folder.getRoot().toPath().resolve(name), contents).toString();
+    }
+
+    private String file(String name, byte[] contents) throws IOException {
+        return Files.write(folder.getRoot().toPath().resolve(name), contents).toString();
+    }
+
+    // Names of files in every written group
+    private List<List<String>> groups(List<String> files, int threads) throws IOException {
+        DuplicateFinder finder = new DuplicateFinder(threads, ALGORITHM, null, FileHasher::hash, null);
+        for (String file : files) {
+            finder.submit(file);
+        }
+        Path output = folder.getRoot().toPath().resolve("output");
+        try (ManifestWriter writer = new ManifestWriter(output)) {
+            finder.write(writer);
+        }
+
+        List<List<String>> groups = new ArrayList<>();
+        List<String> group = new ArrayList<>();
+        String digest = null;
+        for (String line : Files.readAllLines(output)) {
+            if (line.isEmpty()) {
+                groups.add(group);
+                group = new ArrayList<>();
+                digest = null;
+                continue;
+            }
+            String[] parts = line.split(" ", 2);
+            if (digest != null) {
+                Assert.assertEquals("Digests in a group differ", digest, parts[0]);
+            }
+            digest = parts[0];
+            group.add(Path.of(parts[1]).getFileName().toString());
+        }
+        Assert.assertTrue(group.isEmpty());
+        return groups;
+    }
+}
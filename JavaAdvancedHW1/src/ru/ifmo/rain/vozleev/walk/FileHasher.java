@@ -0,0 +1,163 @@
+package ru.ifmo.rain.vozleev.walk;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Feeds file contents to a {@link HashFunction}.
+ * <p>
+ * Files of at least {@link #MAP_THRESHOLD} bytes are mapped into memory window by window,
+ * smaller ones are read through a page-aligned direct buffer reused by the calling thread.
+ * Files that fit into the buffer are read with a single call, without waiting for the end of file.
+ * Time spent in opening, reading and hashing is added to the {@link Probe} of the calling thread,
+ * time of page faults on mapped files counts as hashing.
+ * A mapped file truncated by another process while being hashed fails with {@link IOException}
+ * instead of the {@link InternalError} the JVM raises on the resulting {@code SIGBUS}.
+ */
+final class FileHasher {
+
+    static final long MAP_THRESHOLD = 1L << 20;
+    static final long MAP_WINDOW = 64L << 20;
+    private static final int BUFFER_SIZE = 64 << 10;
+    private static final int PAGE_SIZE = 4 << 10;
+
+    private static final ThreadLocal<ByteBuffer> BUFFER = ThreadLocal.withInitial(() ->
+            ByteBuffer.allocateDirect(BUFFER_SIZE + PAGE_SIZE).alignedSlice(PAGE_SIZE).limit(BUFFER_SIZE).slice());
+
+    private FileHasher() {
+    }
+
+    /**
+     * Resets {@code function} and hashes contents of the file with it.
+     */
+    static void hash(Path file, HashFunction function) throws IOException {
+        function.reset();
+        try (FileChannel channel = open(file)) {
+            long size = channel.size();
+            if (size >= MAP_THRESHOLD) {
+                mapped(channel, size, function);
+            } else {
+                whole(channel, size, function);
+            }
+        }
+    }
+
+    /**
+     * Resets {@code function} and hashes the first and the last {@code edge} bytes of the file with it.
+     * Files of at most {@code 2 * edge} bytes are hashed completely.
+     */
+    static void hashEdges(Path file, HashFunction function, int edge) throws IOException {
+        function.reset();
+        try (FileChannel channel = open(file)) {
+            long size = channel.size();
+            if (size <= 2L * edge) {
+                whole(channel, size, function);
+            } else {
+                range(channel, 0, edge, function);
+                range(channel, size - edge, edge, function);
+            }
+        }
+    }
+
+    static FileChannel open(Path file) throws IOException {
+        Probe probe = Probe.current();
+        long start = System.nanoTime();
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        probe.open += System.nanoTime() - start;
+        return channel;
+    }
+
+    /**
+     * Hashes {@code length} bytes of the file starting at {@code position} with positional reads,
+     * so the channel may be shared between threads.
+     */
+    static void range(FileChannel channel, long position, long length, HashFunction function) throws IOException {
+        Probe probe = Probe.current();
+        ByteBuffer buffer = BUFFER.get();
+        for (long end = position + length; position < end; ) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), end - position));
+            long start = System.nanoTime();
+            int read = channel.read(buffer, position);
+            long fetched = System.nanoTime();
+            probe.read += fetched - start;
+            if (read == -1) {
+                break;
+            }
+            position += read;
+            buffer.flip();
+            function.update(buffer);
+            probe.hash += System.nanoTime() - fetched;
+            probe.bytes += read;
+        }
+    }
+
+    private static void mapped(FileChannel channel, long size, HashFunction function) throws IOException {
+        Probe probe = Probe.current();
+        for (long position = 0; position < size; position += MAP_WINDOW) {
+            long length = Math.min(MAP_WINDOW, size - position);
+            long start = System.nanoTime();
+            MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+            long mapped = System.nanoTime();
+            try {
+                function.update(window);
+            } catch (InternalError e) {
+                throw new IOException("File was truncated while hashing", e);
+            }
+            probe.read += mapped - start;
+            probe.hash += System.nanoTime() - mapped;
+            probe.bytes += length;
+        }
+    }
+
+    /**
+     * Hashes a file of {@code size} bytes that is not mapped. Empty files are read till the end,
+     * since special files report zero size.
+     */
+    private static void whole(FileChannel channel, long size, HashFunction function) throws IOException {
+        if (size == 0 || size > BUFFER_SIZE) {
+            buffered(channel, function);
+            return;
+        }
+        Probe probe = Probe.current();
+        ByteBuffer buffer = BUFFER.get();
+        buffer.clear().limit((int) size);
+        long start = System.nanoTime();
+        int read = channel.read(buffer);
+        long fetched = System.nanoTime();
+        probe.read += fetched - start;
+        if (read > 0) {
+            buffer.flip();
+            function.update(buffer);
+            probe.hash += System.nanoTime() - fetched;
+            probe.bytes += read;
+        }
+        if (read < size) {
+            buffered(channel, function);
+        }
+    }
+
+    private static void buffered(FileChannel channel, HashFunction function) throws IOException {
+        Probe probe = Probe.current();
+        ByteBuffer buffer = BUFFER.get();
+        buffer.clear();
+        while (true) {
+            long start = System.nanoTime();
+            int read = channel.read(buffer);
+            long fetched = System.nanoTime();
+            probe.read += fetched - start;
+            if (read == -1) {
+                break;
+            }
+            buffer.flip();
+            function.update(buffer);
+            buffer.clear();
+            probe.hash += System.nanoTime() - fetched;
+            probe.bytes += read;
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package ru.ifmo.rain.vozleev.walk;
+
+import java.io.IOException;
+
+/**
+ * Consumer of file names read from the input file or discovered by {@link DirectoryTraversal}.
+ */
+interface FileSink {
+    void submit(String file) throws IOException;
+}
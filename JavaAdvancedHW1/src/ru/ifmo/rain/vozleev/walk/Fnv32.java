@@ -0,0 +1,65 @@
+package ru.ifmo.rain.vozleev.walk;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * 32-bit FNV-1 hash, the original {@link Walk} hash.
+ * <p>
+ * Bytes are still mixed one by one, but read from the buffer eight at a time.
+ */
+class Fnv32 implements HashFunction {
+
+    static final int INIT = 0x811c9dc5;
+    static final int PRIME = 0x01000193;
+
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private int hval;
+
+    Fnv32() {
+        reset();
+    }
+
+    @Override
+    public int length() {
+        return Integer.BYTES;
+    }
+
+    @Override
+    public void reset() {
+        hval = INIT;
+    }
+
+    @Override
+    public void update(ByteBuffer buffer) {
+        int h = hval;
+        int i = buffer.position();
+        int limit = buffer.limit();
+        for (; i + Long.BYTES <= limit; i += Long.BYTES) {
+            long word = (long) LONGS.get(buffer, i);
+            h = (h * PRIME) ^ (int) (word & 0xff);
+            h = (h * PRIME) ^ (int) (word >>> 8 & 0xff);
+            h = (h * PRIME) ^ (int) (word >>> 16 & 0xff);
+            h = (h * PRIME) ^ (int) (word >>> 24 & 0xff);
+            h = (h * PRIME) ^ (int) (word >>> 32 & 0xff);
+            h = (h * PRIME) ^ (int) (word >>> 40 & 0xff);
+            h = (h * PRIME) ^ (int) (word >>> 48 & 0xff);
+            h = (h * PRIME) ^ (int) (word >>> 56);
+        }
+        for (; i < limit; i++) {
+            h = (h * PRIME) ^ (buffer.get(i) & 0xff);
+        }
+        buffer.position(limit);
+        hval = h;
+    }
+
+    @Override
+    public void digest(byte[] digest) {
+        for (int i = 0; i < Integer.BYTES; i++) {
+            digest[i] = (byte) (hval >>> (24 - 8 * i));
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package ru.ifmo.rain.vozleev.walk;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * 64-bit FNV-1 hash.
+ */
+class Fnv64 implements HashFunction {
+
+    private static final long INIT = 0xcbf29ce484222325L;
+    private static final long PRIME = 0x100000001b3L;
+
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private long hval;
+
+    Fnv64() {
+        reset();
+    }
+
+    @Override
+    public int length() {
+        return Long.BYTES;
+    }
+
+    @Override
+    public void reset() {
+        hval = INIT;
+    }
+
+    @Override
+    public void update(ByteBuffer buffer) {
+        long h = hval;
+        int i = buffer.position();
+        int limit = buffer.limit();
+        for (; i + Long.BYTES <= limit; i += Long.BYTES) {
+            long word = (long) LONGS.get(buffer, i);
+            h = (h * PRIME) ^ (word & 0xff);
+            h = (h * PRIME) ^ (word >>> 8 & 0xff);
+            h = (h * PRIME) ^ (word >>> 16 & 0xff);
+            h = (h * PRIME) ^ (word >>> 24 & 0xff);
+            h = (h * PRIME) ^ (word >>> 32 & 0xff);
+            h = (h * PRIME) ^ (word >>> 40 & 0xff);
+            h = (h * PRIME) ^ (word >>> 48 & 0xff);
+            h = (h * PRIME) ^ (word >>> 56);
+        }
+        for (; i < limit; i++) {
+            h = (h * PRIME) ^ (buffer.get(i) & 0xff);
+        }
+        buffer.position(limit);
+        hval = h;
+    }
+
+    @Override
+    public void digest(byte[] digest) {
+        for (int i = 0; i < Long.BYTES; i++) {
+            digest[i] = (byte) (hval >>> (56 - 8 * i));
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package ru.ifmo.rain.vozleev.walk;
+
+import java.util.function.Supplier;
+
+/**
+ * Hash functions available through the {@code --hash} option.
+ */
+enum HashAlgorithm {
+    FNV32("fnv32", Fnv32::new),
+    FNV64("fnv64", Fnv64::new),
+    XXHASH64("xxhash64", XxHash64::new),
+    SHA256("sha256", Sha256::new);
+
+    private final String name;
+    private final Supplier<HashFunction> factory;
+
+    HashAlgorithm(String name, Supplier<HashFunction> factory) {
+        this.name = name;
+        this.factory = factory;
+    }
+
+    HashFunction create() {
+        return factory.get();
+    }
+
+    String algorithmName() {
+        return name;
+    }
+
+    /**
+     * @throws IllegalArgumentException if there is no algorithm with such name
+     */
+    static HashAlgorithm forName(String name) {
+        for (HashAlgorithm algorithm : values()) {
+            if (algorithm.name.equals(name)) {
+                return algorithm;
+            }
+        }
+        throw new IllegalArgumentException("ERROR! Unknown hash function: " + name);
+    }
+}
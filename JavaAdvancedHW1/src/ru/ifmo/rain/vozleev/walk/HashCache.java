@@ -0,0 +1,216 @@
+package ru.ifmo.rain.vozleev.walk;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Persistent cache of file hashes keyed by absolute path, size, modification time and file key.
+ * <p>
+ * Files with unchanged metadata are answered without being opened. The cache file is a header
+ * ({@code magic, version, scheme, count}) followed by {@code count} records of
+ * {@code path, size, modified, fileKey, digest}, strings are stored as length-prefixed UTF-8
+ * and all digests have the same length. The scheme names the hash function and the way it is applied,
+ * see {@link WalkOptions#scheme()}.
+ * All records are decoded into memory on load. {@link #save()} rewrites the file from scratch,
+ * records of files not visited in this run are kept while the files exist, so a partial or
+ * {@code --dedup} run doesn't wipe entries of other files.
+ */
+class HashCache {
+
+    private static final int MAGIC = 0x574b4331;
+    private static final int VERSION = 2;
+
+    private final Path file;
+    private final String scheme;
+    private final int length;
+    private final Map<String, Record> records = new ConcurrentHashMap<>();
+    private final Set<String> touched = ConcurrentHashMap.newKeySet();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    private static class Record {
+        private final long size;
+        private final long modified;
+        private final String fileKey;
+        private final byte[] digest;
+
+        private Record(long size, long modified, String fileKey, byte[] digest) {
+            this.size = size;
+            this.modified = modified;
+            this.fileKey = fileKey;
+            this.digest = digest;
+        }
+
+        private boolean matches(long size, long modified, String fileKey) {
+            return this.size == size && this.modified == modified && this.fileKey.equals(fileKey);
+        }
+    }
+
+    /**
+     * Creates an empty cache of {@code length}-byte digests computed by {@code scheme} that will be saved to {@code file}.
+     */
+    HashCache(Path file, String scheme, int length) {
+        this.file = file;
+        this.scheme = scheme;
+        this.length = length;
+    }
+
+    /**
+     * Loads the cache from {@code file}. Missing file gives an empty cache.
+     *
+     * @throws IOException if the file can't be read, is damaged or holds digests of another scheme
+     */
+    static HashCache load(Path file, String scheme, int length) throws IOException {
+        HashCache cache = new HashCache(file, scheme, length);
+        if (Files.notExists(file)) {
+            return cache;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Hash cache is too large: " + file);
+            }
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < 3 * Integer.BYTES || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                throw new IOException("Not a hash cache: " + file);
+            }
+            String name = readString(buffer, file);
+            if (!name.equals(scheme)) {
+                throw new IOException("Hash cache holds " + name + " digests: " + file);
+            }
+            int count = buffer.getInt();
+            if (count < 0) {
+                throw new IOException("Hash cache is damaged: " + file);
+            }
+            for (; count > 0; count--) {
+                String path = readString(buffer, file);
+                long size = buffer.getLong();
+                long modified = buffer.getLong();
+                String fileKey = readString(buffer, file);
+                byte[] digest = new byte[length];
+                buffer.get(digest);
+                cache.records.put(path, new Record(size, modified, fileKey, digest));
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Hash cache is truncated: " + file);
+        }
+        return cache;
+    }
+
+    private static String readString(ByteBuffer buffer, Path file) throws IOException {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IOException("Hash cache is damaged: " + file);
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Writes digest of the file to {@code digest}, hashing it with {@code hasher} and {@code function}
+     * only if its metadata differs from the cached one.
+     */
+    void hash(Path path, HashFunction function, ContentHasher hasher, byte[] digest) throws IOException {
+        String key = path.toAbsolutePath().toString();
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            records.remove(key);
+            touched.remove(key);
+            throw e;
+        }
+        long size = attributes.size();
+        long modified = attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+        String fileKey = Objects.toString(attributes.fileKey(), "");
+
+        Record record = records.get(key);
+        if (record != null && record.matches(size, modified, fileKey)) {
+            hits.increment();
+            touched.add(key);
+            System.arraycopy(record.digest, 0, digest, 0, record.digest.length);
+            return;
+        }
+        misses.increment();
+        hasher.hash(path, function);
+        function.digest(digest);
+        records.put(key, new Record(size, modified, fileKey, Arrays.copyOf(digest, length)));
+        touched.add(key);
+    }
+
+    /**
+     * Atomically replaces the cache file with the current records, dropping records of files that no longer exist.
+     */
+    void save() throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        List<String> keys = new ArrayList<>(records.size());
+        for (String key : records.keySet()) {
+            if (touched.contains(key) || exists(key)) {
+                keys.add(key);
+            }
+        }
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            writeString(out, scheme);
+            out.writeInt(keys.size());
+            for (String key : keys) {
+                Record record = records.get(key);
+                writeString(out, key);
+                out.writeLong(record.size);
+                out.writeLong(record.modified);
+                writeString(out, record.fileKey);
+                out.write(record.digest);
+            }
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static boolean exists(String key) {
+        try {
+            return Files.exists(Paths.get(key));
+        } catch (InvalidPathException e) {
+            return false;
+        }
+    }
+
+    long hits() {
+        return hits.sum();
+    }
+
+    long misses() {
+        return misses.sum();
+    }
+}
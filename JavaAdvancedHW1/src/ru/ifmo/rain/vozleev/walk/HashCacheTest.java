@@ -0,0 +1,160 @@
+package ru.ifmo.rain.vozleev.walk;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checks hits and misses of {@link HashCache}, its round trip through a file and rejection of damaged files.
+ */
+public class HashCacheTest {
+    private static final HashAlgorithm ALGORITHM = HashAlgorithm.SHA256;
+    private static final String SCHEME = ALGORITHM.algorithmName();
+    private static final int LENGTH = ALGORITHM.create().length();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final AtomicInteger hashed = new AtomicInteger();
+    private final ContentHasher hasher = (file, function) -> {
+        hashed.incrementAndGet();
+        FileHasher.hash(file, function);
+    };
+
+    @Test
+    public void test01_hitAndMiss() throws IOException {
+        Path file = file("a", "contents");
+        HashCache cache = HashCache.load(folder.getRoot().toPath().resolve("cache"), SCHEME, LENGTH);
+        byte[] first = hash(cache, file);
+        byte[] second = hash(cache, file);
+        Assert.assertArrayEquals(first, second);
+        Assert.assertEquals(1, hashed.get());
+        Assert.assertEquals(1, cache.hits());
+        Assert.assertEquals(1, cache.misses());
+
+        Files.writeString(file, "changed!");
+        Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() + 5000));
+        Assert.assertFalse(Arrays.equals(first, hash(cache, file)));
+        Assert.assertEquals(2, hashed.get());
+        Assert.assertEquals(2, cache.misses());
+    }
+
+    @Test
+    public void test02_saveAndLoad() throws IOException {
+        Path cacheFile = folder.getRoot().toPath().resolve("cache");
+        Path a = file("a", "first");
+        Path b = file("b", "second");
+        HashCache cache = HashCache.load(cacheFile, SCHEME, LENGTH);
+        byte[] digest = hash(cache, a);
+        hash(cache, b);
+        cache.save();
+
+        HashCache loaded = HashCache.load(cacheFile, SCHEME, LENGTH);
+        Assert.assertArrayEquals(digest, hash(loaded, a));
+        Assert.assertEquals(1, loaded.hits());
+        Assert.assertEquals(2, hashed.get());
+    }
+
+    @Test
+    public void test03_untouchedRecords() throws IOException {
+        // A run that visits only some files keeps records of the others while they exist
+        Path cacheFile = folder.getRoot().toPath().resolve("cache");
+        Path a = file("a", "first");
+        Path b = file("b", "second");
+        Path c = file("c", "third");
+        HashCache cache = HashCache.load(cacheFile, SCHEME, LENGTH);
+        hash(cache, a);
+        hash(cache, b);
+        hash(cache, c);
+        cache.save();
+
+        HashCache partial = HashCache.load(cacheFile, SCHEME, LENGTH);
+        hash(partial, a);
+        Files.delete(c);
+        partial.save();
+
+        HashCache loaded = HashCache.load(cacheFile, SCHEME, LENGTH);
+        hash(loaded, b);
+        Assert.assertEquals(1, loaded.hits());
+        file("c", "third");
+        hash(loaded, c);
+        Assert.assertEquals(1, loaded.misses());
+    }
+
+    @Test
+    public void test04_otherScheme() throws IOException {
+        Path cacheFile = saved();
+        assertRejected(() -> HashCache.load(cacheFile, "fnv32", HashAlgorithm.FNV32.create().length()));
+    }
+
+    @Test
+    public void test05_damaged() throws IOException {
+        Path cacheFile = saved();
+        byte[] valid = Files.readAllBytes(cacheFile);
+        // magic, version, scheme length, scheme, count, path length
+        int count = 3 * Integer.BYTES + SCHEME.length();
+        int pathLength = count + Integer.BYTES;
+
+        assertDamaged(cacheFile, new byte[0]);
+        assertDamaged(cacheFile, Arrays.copyOf(valid, 6));
+        assertDamaged(cacheFile, Arrays.copyOf(valid, valid.length - 1));
+        assertDamaged(cacheFile, withInt(valid, 0, 0x12345678));
+        assertDamaged(cacheFile, withInt(valid, 2 * Integer.BYTES, -1));
+        assertDamaged(cacheFile, withInt(valid, 2 * Integer.BYTES, Integer.MAX_VALUE));
+        assertDamaged(cacheFile, withInt(valid, count, -5));
+        assertDamaged(cacheFile, withInt(valid, count, Integer.MAX_VALUE));
+        assertDamaged(cacheFile, withInt(valid, pathLength, -1));
+        assertDamaged(cacheFile, withInt(valid, pathLength, Integer.MAX_VALUE));
+    }
+
+    private Path saved() throws IOException {
+        Path cacheFile = folder.getRoot().toPath().resolve("cache");
+        HashCache cache = HashCache.load(cacheFile, SCHEME, LENGTH);
+        hash(cache, file("a", "contents"));
+        cache.save();
+        return cacheFile;
+    }
+
+    private Path file(String name, String contents) throws IOException {
+        return Files.writeString(folder.getRoot().toPath().resolve(name), contents);
+    }
+
+    private byte[] hash(HashCache cache, Path file) throws IOException {
+        byte[] digest = new byte[LENGTH];
+        cache.hash(file, ALGORITHM.create(), hasher, digest);
+        return digest;
+    }
+
+    private static byte[] withInt(byte[] bytes, int offset, int value) {
+        byte[] result = bytes.clone();
+        ByteBuffer.wrap(result).putInt(offset, value);
+        return result;
+    }
+
+    private static void assertDamaged(Path cacheFile, byte[] contents) throws IOException {
+        Files.write(cacheFile, contents);
+        assertRejected(() -> HashCache.load(cacheFile, SCHEME, LENGTH));
+    }
+
+    private interface Load {
+        HashCache load() throws IOException;
+    }
+
+    private static void assertRejected(Load load) {
+        try {
+            load.load();
+            Assert.fail("Damaged cache loaded");
+        } catch (IOException expected) {
+            // Walk prints the message and starts with an empty cache
+        }
+    }
+}
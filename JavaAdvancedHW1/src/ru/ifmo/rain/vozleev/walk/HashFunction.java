@@ -0,0 +1,29 @@
+package ru.ifmo.rain.vozleev.walk;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Incremental hash function. Instances are stateful and must be confined to one thread.
+ */
+interface HashFunction {
+
+    /**
+     * Returns length of the digest in bytes.
+     */
+    int length();
+
+    /**
+     * Starts a new hash computation.
+     */
+    void reset();
+
+    /**
+     * Hashes all remaining bytes of the buffer and moves its position to the limit.
+     */
+    void update(ByteBuffer buffer);
+
+    /**
+     * Writes big-endian digest of all bytes passed since the last {@link #reset()} to the first {@link #length()} bytes of {@code digest}.
+     */
+    void digest(byte[] digest);
+}
@@ -0,0 +1,147 @@
+package ru.ifmo.rain.vozleev.walk;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Hashes submitted files on a fixed pool of workers and writes the result lines in submission order.
+ * <p>
+ * Pending results are kept in a ring of {@code WINDOW_PER_THREAD} preallocated slots per worker,
+ * so memory usage does not depend on the number of submitted files.
+ */
+class HashingEngine implements FileSink, AutoCloseable {
+
+    private static final int WINDOW_PER_THREAD = 64;
+
+    private final DigestSink output;
+    private final HashCache cache;
+    private final ContentHasher hasher;
+    private final WalkStats stats;
+    private final ThreadLocal<HashFunction> functions;
+    private final int length;
+    private final ExecutorService workers;
+    private final Slot[] window;
+    private int head;
+    private int size;
+
+    private static class Slot {
+        private final byte[] digest;
+        private String file;
+        private boolean failed;
+        private Future<?> task;
+
+        private Slot(int length) {
+            digest = new byte[length];
+        }
+    }
+
+    /**
+     * Creates an engine with {@code threads} workers, a single thread hashes files in the caller thread.
+     * Files are hashed with {@code hasher}, those with unchanged metadata are answered from {@code cache},
+     * which may be {@code null}. Every file is recorded to {@code stats} unless it is {@code null}.
+     */
+    HashingEngine(int threads, DigestSink output, HashAlgorithm algorithm, HashCache cache, ContentHasher hasher, WalkStats stats) {
+        if (threads <= 0) throw new IllegalArgumentException("Amount of threads must be at least 1.");
+        this.output = output;
+        this.cache = cache;
+        this.hasher = hasher;
+        this.stats = stats;
+        this.functions = ThreadLocal.withInitial(algorithm::create);
+        this.length = algorithm.create().length();
+        this.workers = threads == 1 ? null : Executors.newFixedThreadPool(threads);
+        this.window = new Slot[threads == 1 ? 1 : threads * WINDOW_PER_THREAD];
+        for (int i = 0; i < window.length; i++) {
+            window[i] = new Slot(length);
+        }
+    }
+
+    /**
+     * Creates an engine without cache and statistics.
+     */
+    HashingEngine(int threads, DigestSink output, HashAlgorithm algorithm, ContentHasher hasher) {
+        this(threads, output, algorithm, null, hasher, null);
+    }
+
+    private void hash(Slot slot) {
+        HashFunction function = functions.get();
+        Probe probe = Probe.current();
+        probe.reset();
+        long start = System.nanoTime();
+        try {
+            Path path = Paths.get(slot.file);
+            if (cache != null) {
+                cache.hash(path, function, hasher, slot.digest);
+            } else {
+                hasher.hash(path, function);
+                function.digest(slot.digest);
+            }
+            slot.failed = false;
+            if (stats != null) {
+                stats.record(slot.file, System.nanoTime() - start, probe);
+            }
+        } catch (IOException | InvalidPathException e) {
+            System.err.println("ERROR! File not found: " + slot.file);
+            slot.failed = true;
+            if (stats != null) {
+                stats.error(e);
+            }
+        }
+    }
+
+    @Override
+    public void submit(String file) throws IOException {
+        if (size == window.length) {
+            writeHead();
+        }
+        Slot slot = window[(head + size) % window.length];
+        size++;
+        slot.file = file;
+        if (workers == null) {
+            hash(slot);
+        } else {
+            slot.task = workers.submit(() -> hash(slot));
+        }
+    }
+
+    private void writeHead() throws IOException {
+        Slot slot = window[head];
+        head = (head + 1) % window.length;
+        size--;
+        if (slot.task != null) {
+            try {
+                slot.task.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for hash: " + e.getMessage());
+            } catch (ExecutionException e) {
+                throw new IOException("Hashing failed: " + e.getCause().getMessage(), e.getCause());
+            }
+            slot.task = null;
+        }
+        output.write(slot.failed ? null : slot.digest, length, slot.file);
+        slot.file = null;
+    }
+
+    /**
+     * Writes all pending lines and stops the workers.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            while (size > 0) {
+                writeHead();
+            }
+        } finally {
+            if (workers != null) {
+                workers.shutdownNow();
+            }
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package ru.ifmo.rain.vozleev.walk;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Checks that {@link HashingEngine} and {@link AsyncHashingEngine} write results in submission order
+ * when files finish out of order and there are more of them than slots in the window.
+ */
+public class HashingEngineTest {
+    private static final Random RANDOM = new Random(5093472384759283L);
+    private static final HashAlgorithm ALGORITHM = HashAlgorithm.FNV64;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void test01_singleThread() throws IOException {
+        List<String> files = files(50);
+        Assert.assertEquals(expected(files), hash(files, 1, FileHasher::hash));
+    }
+
+    @Test
+    public void test02_reorderWindow() throws IOException {
+        // Random delays make later files finish first, 1000 files wrap the window of 4 threads several times
+        List<String> files = files(1000);
+        ContentHasher slow = (file, function) -> {
+            if (ThreadLocalRandom.current().nextInt(8) == 0) {
+                sleep(ThreadLocalRandom.current().nextInt(3));
+            }
+            FileHasher.hash(file, function);
+        };
+        Assert.assertEquals(expected(files), hash(files, 4, slow));
+    }
+
+    @Test
+    public void test03_missingFiles() throws IOException {
+        List<String> files = files(300);
+        for (int i = 0; i < files.size(); i += 7) {
+            files.set(i, folder.getRoot().toPath().resolve("missing" + i).toString());
+        }
+        files.set(1, "\0invalid");
+        List<String> expected = expected(files);
+        for (int i = 0; i < files.size(); i += 7) {
+            Assert.assertEquals("0".repeat(2 * ALGORITHM.create().length()) + " " + files.get(i), expected.get(i));
+        }
+        Assert.assertEquals(expected, hash(files, 3, FileHasher::hash));
+    }
+
+    @Test
+    public void test04_async() throws IOException {
+        List<String> files = files(500);
+        files.set(10, folder.getRoot().toPath().resolve("missing").toString());
+        List<String> actual = new ArrayList<>();
+        try (AsyncHashingEngine engine = new AsyncHashingEngine(2, 4, sink(actual), ALGORITHM, null)) {
+            for (String file : files) {
+                engine.submit(file);
+            }
+        }
+        Assert.assertEquals(expected(files), actual);
+    }
+
+    private List<String> files(int count) throws IOException {
+        List<String> files = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Path file = folder.getRoot().toPath().resolve("file" + i);
+            byte[] contents = new byte[RANDOM.nextInt(10) == 0 ? RANDOM.nextInt(300_000) : RANDOM.nextInt(100)];
+            RANDOM.nextBytes(contents);
+            Files.write(file, contents);
+            files.add(file.toString());
+        }
+        return files;
+    }
+
+    // Lines written by hashing files one by one in this thread
+    private static List<String> expected(List<String> files) throws IOException {
+        List<String> lines = new ArrayList<>();
+        DigestSink sink = sink(lines);
+        HashFunction function = ALGORITHM.create();
+        byte[] digest = new byte[function.length()];
+        for (String file : files) {
+            try {
+                FileHasher.hash(Path.of(file), function);
+                function.digest(digest);
+                sink.write(digest, digest.length, file);
+            } catch (IOException | IllegalArgumentException e) {
+                sink.write(null, digest.length, file);
+            }
+        }
+        return lines;
+    }
+
+    private static List<String> hash(List<String> files, int threads, ContentHasher hasher) throws IOException {
+        List<String> lines = new ArrayList<>();
+        try (HashingEngine engine = new HashingEngine(threads, sink(lines), ALGORITHM, hasher)) {
+            for (String file : files) {
+                engine.submit(file);
+            }
+        }
+        return lines;
+    }
+
+    private static DigestSink sink(List<String> lines) {
+        return (digest, length, file) -> {
+            byte[] hex = new byte[2 * length];
+            ManifestWriter.hex(digest, length, hex);
+            lines.add(new String(hex, StandardCharsets.US_ASCII) + " " + file);
+        };
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package ru.ifmo.rain.vozleev.walk;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Memory-mapped binary manifest written by {@link ManifestIndexWriter}.
+ * <p>
+ * The file is {@code magic, version}, a dictionary of paths, block table, digest records, digest table and a footer.
+ * Paths are sorted by their UTF-8 bytes and front-coded in blocks of {@code BLOCK}: every entry is
+ * {@code shared, suffix length, suffix} with varint lengths, the first entry of a block is stored whole.
+ * The block table holds dictionary offsets of blocks, records hold fixed-width digests in path order
+ * and the digest table holds path numbers sorted by digest. The footer is
+ * {@code dictionary, block table, records, digest table} offsets followed by {@code count, length, block, magic},
+ * so both path and digest lookups are binary searches over the mapping.
+ */
+class ManifestIndex {
+
+    static final int MAGIC = 0x574b4d31;
+    static final int VERSION = 1;
+    static final int BLOCK = 16;
+    private static final int FOOTER = 4 * Long.BYTES + 4 * Integer.BYTES;
+
+    private final ByteBuffer buffer;
+    private final int dictionary;
+    private final int blockTable;
+    private final int records;
+    private final int digestTable;
+    private final int count;
+    private final int length;
+    private final int block;
+
+    private ManifestIndex(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        int footer = buffer.limit() - FOOTER;
+        if (footer < 2 * Integer.BYTES || buffer.getInt(0) != MAGIC || buffer.getInt(buffer.limit() - Integer.BYTES) != MAGIC) {
+            throw new IOException("Not a manifest index");
+        }
+        if (buffer.getInt(Integer.BYTES) != VERSION) {
+            throw new IOException("Unsupported manifest index version: " + buffer.getInt(Integer.BYTES));
+        }
+        dictionary = offset(buffer.getLong(footer), footer);
+        blockTable = offset(buffer.getLong(footer + Long.BYTES), footer);
+        records = offset(buffer.getLong(footer + 2 * Long.BYTES), footer);
+        digestTable = offset(buffer.getLong(footer + 3 * Long.BYTES), footer);
+        count = buffer.getInt(footer + 4 * Long.BYTES);
+        length = buffer.getInt(footer + 4 * Long.BYTES + Integer.BYTES);
+        block = buffer.getInt(footer + 4 * Long.BYTES + 2 * Integer.BYTES);
+        if (count < 0 || length < 0 || block <= 0 || digestTable + (long) count * Integer.BYTES > footer) {
+            throw new IOException("Manifest index is corrupted");
+        }
+    }
+
+    private static int offset(long value, int limit) throws IOException {
+        if (value < 0 || value > limit) {
+            throw new IOException("Manifest index is corrupted");
+        }
+        return (int) value;
+    }
+
+    /**
+     * Maps the index stored in {@code file}.
+     *
+     * @throws IOException if the file can't be read, is not an index or is larger than 2 GiB
+     */
+    static ManifestIndex open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Manifest index is too large: " + file);
+            }
+            return new ManifestIndex(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    int size() {
+        return count;
+    }
+
+    int digestLength() {
+        return length;
+    }
+
+    /**
+     * Returns digest of {@code path}, or {@code null} if the manifest doesn't list it.
+     */
+    byte[] digest(String path) {
+        byte[] key = path.getBytes(StandardCharsets.UTF_8);
+        int blocks = (count + block - 1) / block;
+        int low = 0;
+        int high = blocks - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            ByteBuffer entry = blockStart(middle);
+            readVarInt(entry);
+            byte[] first = new byte[readVarInt(entry)];
+            entry.get(first);
+            if (Arrays.compareUnsigned(first, key) <= 0) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        if (high < 0) {
+            return null;
+        }
+
+        ByteBuffer entry = blockStart(high);
+        byte[] current = new byte[0];
+        for (int i = high * block; i < Math.min(count, (high + 1) * block); i++) {
+            current = next(entry, current);
+            int compared = Arrays.compareUnsigned(current, key);
+            if (compared == 0) {
+                return record(i);
+            } else if (compared > 0) {
+                break;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns paths with the given digest in path order.
+     */
+    List<String> paths(byte[] digest) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (Arrays.compareUnsigned(record(byDigest(middle)), digest) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        List<String> paths = new ArrayList<>();
+        for (int i = low; i < count && Arrays.equals(record(byDigest(i)), digest); i++) {
+            paths.add(path(byDigest(i)));
+        }
+        return paths;
+    }
+
+    /**
+     * Returns the {@code index}-th path in sorted order.
+     */
+    String path(int index) {
+        ByteBuffer entry = blockStart(index / block);
+        byte[] current = new byte[0];
+        for (int i = index - index % block; i <= index; i++) {
+            current = next(entry, current);
+        }
+        return new String(current, StandardCharsets.UTF_8);
+    }
+
+    private int byDigest(int index) {
+        return buffer.getInt(digestTable + index * Integer.BYTES);
+    }
+
+    private byte[] record(int index) {
+        byte[] digest = new byte[length];
+        buffer.duplicate().position(records + index * length).get(digest);
+        return digest;
+    }
+
+    private ByteBuffer blockStart(int index) {
+        return buffer.duplicate().position(dictionary + (int) buffer.getLong(blockTable + index * Long.BYTES));
+    }
+
+    private static byte[] next(ByteBuffer entry, byte[] previous) {
+        int shared = readVarInt(entry);
+        byte[] current = Arrays.copyOf(previous, shared + readVarInt(entry));
+        entry.get(current, shared, current.length - shared);
+        return current;
+    }
+
+    private static int readVarInt(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7f) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package ru.ifmo.rain.vozleev.walk;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Checks round trips of paths and digests through {@link ManifestIndexWriter} and {@link ManifestIndex}.
+ */
+public class ManifestIndexTest {
+    private static final Random RANDOM = new Random(8172634509128374L);
+    private static final int LENGTH = 8;
+    private static final String[] PARTS = {"a", "ab", "b", "dir/", "dir/sub/", "é", "中", "😀", "z"};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void test01_roundTrip() throws IOException {
+        for (int size : new int[]{0, 1, ManifestIndex.BLOCK - 1, ManifestIndex.BLOCK, ManifestIndex.BLOCK + 1, 1000}) {
+            check(entries(size), 1 << 30);
+        }
+    }
+
+    @Test
+    public void test02_spilled() throws IOException {
+        // Runs of a few hundred bytes make the writer merge dozens of them
+        Map<String, byte[]> entries = entries(2000);
+        Path index = check(entries, 1 << 30);
+        Path spilled = check(entries, 300);
+        Assert.assertArrayEquals(Files.readAllBytes(index), Files.readAllBytes(spilled));
+        Assert.assertArrayEquals(new String[]{"index"}, Arrays.stream(folder.getRoot().list()).filter(name -> name.startsWith("index")).toArray());
+    }
+
+    @Test
+    public void test03_missingDigests() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("index");
+        try (ManifestIndexWriter writer = new ManifestIndexWriter(file, 100)) {
+            writer.write(null, LENGTH, "missing");
+            writer.write(new byte[LENGTH], LENGTH, "zero");
+        }
+        ManifestIndex index = ManifestIndex.open(file);
+        Assert.assertArrayEquals(new byte[LENGTH], index.digest("missing"));
+        Assert.assertEquals(Arrays.asList("missing", "zero"), index.paths(new byte[LENGTH]));
+    }
+
+    @Test
+    public void test04_damaged() throws IOException {
+        Path file = check(entries(100), 1 << 30);
+        byte[] valid = Files.readAllBytes(file);
+        int footer = valid.length - 4 * Long.BYTES - 4 * Integer.BYTES;
+
+        assertDamaged(file, new byte[0]);
+        assertDamaged(file, Arrays.copyOf(valid, valid.length - 1));
+        assertDamaged(file, Arrays.copyOfRange(valid, 0, 2 * Integer.BYTES));
+        assertDamaged(file, withLong(valid, 0, 0x1234567812345678L));
+        assertDamaged(file, withLong(valid, footer, -1));
+        assertDamaged(file, withLong(valid, footer + 3 * Long.BYTES, Long.MAX_VALUE));
+        assertDamaged(file, withInt(valid, footer + 4 * Long.BYTES, Integer.MAX_VALUE));
+        assertDamaged(file, withInt(valid, footer + 4 * Long.BYTES, -1));
+        assertDamaged(file, withInt(valid, footer + 4 * Long.BYTES + 2 * Integer.BYTES, 0));
+    }
+
+    private Path check(Map<String, byte[]> entries, long runBytes) throws IOException {
+        Path file = folder.getRoot().toPath().resolve(runBytes < 1 << 30 ? "spilled" : "index");
+        try (ManifestIndexWriter writer = new ManifestIndexWriter(file, runBytes)) {
+            for (Map.Entry<String, byte[]> entry : shuffled(entries)) {
+                writer.write(entry.getValue(), LENGTH, entry.getKey());
+            }
+        }
+
+        ManifestIndex index = ManifestIndex.open(file);
+        Assert.assertEquals(entries.size(), index.size());
+        int i = 0;
+        for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+            Assert.assertEquals(entry.getKey(), index.path(i++));
+            Assert.assertArrayEquals(entry.getKey(), entry.getValue(), index.digest(entry.getKey()));
+            List<String> paths = new ArrayList<>();
+            for (Map.Entry<String, byte[]> other : entries.entrySet()) {
+                if (Arrays.equals(other.getValue(), entry.getValue())) {
+                    paths.add(other.getKey());
+                }
+            }
+            Assert.assertEquals(paths, index.paths(entry.getValue()));
+        }
+        Assert.assertNull(index.digest("absent"));
+        Assert.assertNull(index.digest(""));
+        Assert.assertEquals(List.of(), index.paths(new byte[]{1, 2, 3, 4, 5, 6, 7, 8}));
+        return file;
+    }
+
+    // Paths in UTF-8 byte order, which is code point order, with digests that often repeat
+    private static Map<String, byte[]> entries(int size) {
+        Map<String, byte[]> entries = new TreeMap<>(ManifestIndexTest::compareCodePoints);
+        while (entries.size() < size) {
+            StringBuilder path = new StringBuilder();
+            for (int i = RANDOM.nextInt(6); i >= 0; i--) {
+                path.append(PARTS[RANDOM.nextInt(PARTS.length)]);
+            }
+            byte[] digest = new byte[LENGTH];
+            digest[LENGTH - 1] = (byte) RANDOM.nextInt(size / 3 + 1);
+            entries.put(path.append(File.separator).append(entries.size()).toString(), digest);
+        }
+        return entries;
+    }
+
+    private static int compareCodePoints(String a, String b) {
+        return Arrays.compare(a.codePoints().toArray(), b.codePoints().toArray());
+    }
+
+    private static List<Map.Entry<String, byte[]>> shuffled(Map<String, byte[]> entries) {
+        List<Map.Entry<String, byte[]>> list = new ArrayList<>(entries.entrySet());
+        Collections.shuffle(list, RANDOM);
+        return list;
+    }
+
+    private static byte[] withInt(byte[] bytes, int offset, int value) {
+        byte[] result = bytes.clone();
+        ByteBuffer.wrap(result).putInt(offset, value);
+        return result;
+    }
+
+    private static byte[] withLong(byte[] bytes, int offset, long value) {
+        byte[] result = bytes.clone();
+        ByteBuffer.wrap(result).putLong(offset, value);
+        return result;
+    }
+
+    private static void assertDamaged(Path file, byte[] contents) throws IOException {
+        Files.write(file, contents);
+        try {
+            ManifestIndex.open(file);
+            Assert.fail("Damaged index opened");
+        } catch (IOException expected) {
+            // ManifestQuery reports the message
+        }
+    }
+}
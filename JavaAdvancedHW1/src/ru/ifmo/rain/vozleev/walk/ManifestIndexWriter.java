@@ -0,0 +1,293 @@
+package ru.ifmo.rain.vozleev.walk;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Collects {@code hash path} results and writes them as a {@link ManifestIndex} file on {@link #close()}.
+ * <p>
+ * Results are sorted externally: every {@code RUN_BYTES} of them are sorted by path and spilled to a temporary run
+ * next to the index, and the runs are merged on close. Digest table entries are sorted the same way, so heap usage
+ * doesn't depend on the size of the manifest. The index is mapped as a single buffer, so it fails with
+ * {@link IOException} when it would exceed 2 GiB.
+ */
+class ManifestIndexWriter implements DigestSink, Closeable {
+
+    private static final long RUN_BYTES = 32 << 20;
+    private static final long MAX_SIZE = Integer.MAX_VALUE;
+    // Approximate heap cost of an entry besides its bytes: two arrays and two list slots
+    private static final int ENTRY_OVERHEAD = 48;
+
+    private final Path file;
+    private final Path directory;
+    private final long runBytes;
+    private final ExternalSort byPath;
+    private int length = -1;
+
+    ManifestIndexWriter(Path file) {
+        this(file, RUN_BYTES);
+    }
+
+    /**
+     * Creates a writer that spills results to a run every {@code runBytes} of them.
+     */
+    ManifestIndexWriter(Path file, long runBytes) {
+        this.file = file;
+        Path parent = file.toAbsolutePath().getParent();
+        this.directory = parent != null ? parent : file.toAbsolutePath();
+        this.runBytes = runBytes;
+        this.byPath = new ExternalSort(directory, runBytes);
+    }
+
+    /**
+     * Remembers the first {@code length} bytes of {@code digest}, missing digest is stored as zeros.
+     */
+    @Override
+    public void write(byte[] digest, int length, String path) throws IOException {
+        if (this.length == -1) {
+            this.length = length;
+        } else if (this.length != length) {
+            throw new IllegalArgumentException("Digests of different length: " + this.length + " and " + length);
+        }
+        byPath.add(path.getBytes(StandardCharsets.UTF_8), digest == null ? new byte[length] : Arrays.copyOf(digest, length));
+    }
+
+    @Override
+    public void close() throws IOException {
+        int length = Math.max(this.length, 0);
+        Path blocks = Files.createTempFile(directory, "index", ".blocks");
+        Path records = Files.createTempFile(directory, "index", ".records");
+        ExternalSort byDigest = new ExternalSort(directory, runBytes);
+        try (Counter counter = new Counter(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16))) {
+            DataOutputStream out = new DataOutputStream(counter);
+            out.writeInt(ManifestIndex.MAGIC);
+            out.writeInt(ManifestIndex.VERSION);
+
+            long dictionary = counter.count;
+            long[] count = new long[1];
+            try (
+                    DataOutputStream blockOut = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(blocks), 1 << 16));
+                    OutputStream recordOut = new BufferedOutputStream(Files.newOutputStream(records), 1 << 16)
+            ) {
+                byte[][] previous = {new byte[0]};
+                byPath.merge((path, digest) -> {
+                    long i = count[0]++;
+                    int shared = 0;
+                    if (i % ManifestIndex.BLOCK == 0) {
+                        blockOut.writeLong(counter.count - dictionary);
+                    } else {
+                        shared = Arrays.mismatch(previous[0], path);
+                        shared = shared == -1 ? path.length : shared;
+                    }
+                    writeVarInt(out, shared);
+                    writeVarInt(out, path.length - shared);
+                    out.write(path, shared, path.length - shared);
+                    previous[0] = path;
+                    recordOut.write(digest);
+                    byDigest.add(digest, new byte[]{(byte) (i >>> 24), (byte) (i >>> 16), (byte) (i >>> 8), (byte) i});
+                });
+            }
+            pad(out, counter.count);
+            long size = counter.count + Files.size(blocks) + Files.size(records) + Long.BYTES
+                    + count[0] * Integer.BYTES + 4 * Long.BYTES + 4 * Integer.BYTES;
+            if (size > MAX_SIZE) {
+                throw new IOException("Manifest index would exceed 2 GiB: " + file);
+            }
+
+            long blockTable = counter.count;
+            Files.copy(blocks, out);
+            long recordTable = counter.count;
+            Files.copy(records, out);
+            pad(out, counter.count);
+
+            long digestTable = counter.count;
+            byDigest.merge((digest, rank) -> out.write(rank));
+
+            out.writeLong(dictionary);
+            out.writeLong(blockTable);
+            out.writeLong(recordTable);
+            out.writeLong(digestTable);
+            out.writeInt((int) count[0]);
+            out.writeInt(length);
+            out.writeInt(ManifestIndex.BLOCK);
+            out.writeInt(ManifestIndex.MAGIC);
+            out.flush();
+        } catch (IOException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        } finally {
+            byPath.clear();
+            byDigest.clear();
+            Files.deleteIfExists(blocks);
+            Files.deleteIfExists(records);
+        }
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7f) != 0) {
+            out.write(value & 0x7f | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static void pad(DataOutputStream out, long size) throws IOException {
+        for (; size % Long.BYTES != 0; size++) {
+            out.write(0);
+        }
+    }
+
+    // Counts written bytes in a long, unlike DataOutputStream.size()
+    private static class Counter extends FilterOutputStream {
+        private long count;
+
+        private Counter(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+
+    private interface EntryConsumer {
+        void accept(byte[] key, byte[] value) throws IOException;
+    }
+
+    /**
+     * Sorts {@code key, value} pairs by unsigned key bytes, pairs with equal keys keep the order of addition.
+     */
+    private static class ExternalSort {
+        private final Path directory;
+        private final long runBytes;
+        private final List<Path> runs = new ArrayList<>();
+        private final List<byte[]> keys = new ArrayList<>();
+        private final List<byte[]> values = new ArrayList<>();
+        private long bytes;
+
+        private ExternalSort(Path directory, long runBytes) {
+            this.directory = directory;
+            this.runBytes = runBytes;
+        }
+
+        private void add(byte[] key, byte[] value) throws IOException {
+            keys.add(key);
+            values.add(value);
+            bytes += key.length + value.length + ENTRY_OVERHEAD;
+            if (bytes >= runBytes) {
+                spill();
+            }
+        }
+
+        private void spill() throws IOException {
+            Integer[] order = new Integer[keys.size()];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> Arrays.compareUnsigned(keys.get(a), keys.get(b)));
+            Path run = Files.createTempFile(directory, "index", ".run");
+            runs.add(run);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run), 1 << 16))) {
+                for (int i : order) {
+                    writeBytes(out, keys.get(i));
+                    writeBytes(out, values.get(i));
+                }
+            }
+            keys.clear();
+            values.clear();
+            bytes = 0;
+        }
+
+        private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        // Passes all pairs to consumer in order and deletes the runs
+        private void merge(EntryConsumer consumer) throws IOException {
+            spill();
+            PriorityQueue<RunReader> heads = new PriorityQueue<>(Math.max(1, runs.size()), (a, b) -> {
+                int result = Arrays.compareUnsigned(a.key, b.key);
+                return result != 0 ? result : Integer.compare(a.index, b.index);
+            });
+            List<RunReader> readers = new ArrayList<>();
+            try {
+                for (int i = 0; i < runs.size(); i++) {
+                    RunReader reader = new RunReader(Files.newInputStream(runs.get(i)), i);
+                    readers.add(reader);
+                    if (reader.advance()) {
+                        heads.add(reader);
+                    }
+                }
+                while (!heads.isEmpty()) {
+                    RunReader reader = heads.poll();
+                    consumer.accept(reader.key, reader.value);
+                    if (reader.advance()) {
+                        heads.add(reader);
+                    }
+                }
+            } finally {
+                for (RunReader reader : readers) {
+                    reader.in.close();
+                }
+                clear();
+            }
+        }
+
+        private void clear() throws IOException {
+            keys.clear();
+            values.clear();
+            for (Path run : runs) {
+                Files.deleteIfExists(run);
+            }
+            runs.clear();
+        }
+    }
+
+    private static class RunReader {
+        private final DataInputStream in;
+        private final int index;
+        private byte[] key;
+        private byte[] value;
+
+        private RunReader(InputStream in, int index) {
+            this.in = new DataInputStream(new BufferedInputStream(in, 1 << 16));
+            this.index = index;
+        }
+
+        private boolean advance() throws IOException {
+            int length;
+            try {
+                length = in.readInt();
+            } catch (EOFException e) {
+                return false;
+            }
+            key = in.readNBytes(length);
+            value = in.readNBytes(in.readInt());
+            return true;
+        }
+    }
+}
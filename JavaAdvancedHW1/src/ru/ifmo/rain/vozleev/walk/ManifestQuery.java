@@ -0,0 +1,66 @@
+package ru.ifmo.rain.vozleev.walk;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
+
+/**
+ * Looks up digests of paths or paths of digests in a {@link ManifestIndex} written by {@code Walk --index}:
+ * {@code ManifestQuery index (path PATH... | hash HEX...)}. Results are printed as {@code hash path} lines.
+ */
+public class ManifestQuery {
+    public static void main(String[] args) {
+        if (args == null || args.length < 3 || !(args[1].equals("path") || args[1].equals("hash"))) {
+            System.err.println("Usage: ManifestQuery index (path PATH... | hash HEX...)");
+            return;
+        }
+        ManifestIndex index;
+        try {
+            index = ManifestIndex.open(Paths.get(args[0]));
+        } catch (IOException | BufferUnderflowException | InvalidPathException e) {
+            System.err.println("ERROR! Can't read manifest index: " + e.getMessage());
+            return;
+        }
+        byte[] hex = new byte[2 * index.digestLength()];
+        for (int i = 2; i < args.length; i++) {
+            if (args[1].equals("path")) {
+                byte[] digest = index.digest(args[i]);
+                if (digest == null) {
+                    System.err.println("ERROR! Path is not in the manifest: " + args[i]);
+                    continue;
+                }
+                ManifestWriter.hex(digest, index.digestLength(), hex);
+                System.out.println(new String(hex, StandardCharsets.US_ASCII) + " " + args[i]);
+            } else {
+                byte[] digest;
+                try {
+                    digest = parseHex(args[i], index.digestLength());
+                } catch (IllegalArgumentException e) {
+                    System.err.println(e.getMessage());
+                    continue;
+                }
+                for (String path : index.paths(digest)) {
+                    System.out.println(args[i].toLowerCase() + " " + path);
+                }
+            }
+        }
+    }
+
+    private static byte[] parseHex(String value, int length) {
+        if (value.length() != 2 * length) {
+            throw new IllegalArgumentException("ERROR! Hash must have " + 2 * length + " hex digits: " + value);
+        }
+        byte[] digest = new byte[length];
+        for (int i = 0; i < length; i++) {
+            int high = Character.digit(value.charAt(2 * i), 16);
+            int low = Character.digit(value.charAt(2 * i + 1), 16);
+            if (high < 0 || low < 0) {
+                throw new IllegalArgumentException("ERROR! Hash is not hexadecimal: " + value);
+            }
+            digest[i] = (byte) (high << 4 | low);
+        }
+        return digest;
+    }
+}
@@ -0,0 +1,93 @@
+package ru.ifmo.rain.vozleev.walk;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads UTF-8 lines of the input file through a direct byte buffer and a reused char buffer.
+ * Lines are terminated by {@code \n}, {@code \r} or {@code \r\n}, as in {@link java.io.BufferedReader#readLine()}.
+ */
+class ManifestReader implements Closeable {
+
+    private static final int BYTES_SIZE = 1 << 20;
+    private static final int CHARS_SIZE = 1 << 16;
+
+    private final FileChannel channel;
+    private final ByteBuffer bytes = ByteBuffer.allocateDirect(BYTES_SIZE);
+    private final CharBuffer chars = CharBuffer.allocate(CHARS_SIZE);
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final StringBuilder line = new StringBuilder();
+    private boolean endOfInput;
+    private boolean flushed;
+    private boolean skipLineFeed;
+
+    ManifestReader(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        chars.flip();
+    }
+
+    /**
+     * Returns the next line without terminator or {@code null} at the end of file.
+     */
+    String readLine() throws IOException {
+        line.setLength(0);
+        boolean started = false;
+        while (true) {
+            while (chars.hasRemaining()) {
+                char c = chars.get();
+                if (skipLineFeed) {
+                    skipLineFeed = false;
+                    if (c == '\n') {
+                        continue;
+                    }
+                }
+                if (c == '\n' || c == '\r') {
+                    skipLineFeed = c == '\r';
+                    return line.toString();
+                }
+                line.append(c);
+                started = true;
+            }
+            if (!fill()) {
+                return started ? line.toString() : null;
+            }
+        }
+    }
+
+    private boolean fill() throws IOException {
+        chars.clear();
+        while (true) {
+            if (!flushed) {
+                if (!endOfInput && channel.read(bytes) == -1) {
+                    endOfInput = true;
+                }
+                bytes.flip();
+                CoderResult result = decoder.decode(bytes, chars, endOfInput);
+                bytes.compact();
+                if (endOfInput && result.isUnderflow() && decoder.flush(chars).isUnderflow()) {
+                    flushed = true;
+                }
+            }
+            if (chars.position() > 0 || flushed) {
+                chars.flip();
+                return chars.hasRemaining();
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
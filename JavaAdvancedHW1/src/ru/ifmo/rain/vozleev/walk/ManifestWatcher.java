@@ -0,0 +1,270 @@
+package ru.ifmo.rain.vozleev.walk;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps a written manifest up to date.
+ * <p>
+ * Parent directories of all listed files are registered with a {@link WatchService}.
+ * Events are collected until no relevant ones arrive for {@code DEBOUNCE_MILLIS}, but not longer than
+ * {@code MAX_BATCH_MILLIS} after the first one, then every affected file is rehashed
+ * and its hash field is rewritten in place, digests have fixed width so lines never move.
+ * In recursive mode files that appear in a watched directory are appended to the manifest, and directories
+ * created in a watched one are registered with their contents. Without recursion only directories
+ * that exist at start-up are watched.
+ * The manifest itself and other files written by the walk are never rehashed, otherwise every update
+ * would trigger the next one.
+ */
+class ManifestWatcher {
+
+    private static final long DEBOUNCE_MILLIS = 500;
+    private static final long MAX_BATCH_MILLIS = 5000;
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+
+    private final Path manifest;
+    private final ContentHasher hasher;
+    private final HashFunction function;
+    private final boolean recursive;
+    private final byte[] digest;
+    private final byte[] hex;
+    private final Set<Path> ignored = new HashSet<>();
+    private final Map<Path, List<Long>> records = new HashMap<>();
+    private final Map<Path, Path> directories = new HashMap<>();
+    private final Map<WatchKey, Path> keys = new HashMap<>();
+
+    ManifestWatcher(Path manifest, Collection<Path> ignored, HashAlgorithm algorithm, ContentHasher hasher, boolean recursive) {
+        this.manifest = manifest;
+        this.ignored.add(absolute(manifest));
+        for (Path file : ignored) {
+            this.ignored.add(absolute(file));
+        }
+        this.hasher = hasher;
+        this.function = algorithm.create();
+        this.recursive = recursive;
+        this.digest = new byte[function.length()];
+        this.hex = new byte[2 * function.length()];
+    }
+
+    /**
+     * Watches files until the thread is interrupted.
+     */
+    void run() throws IOException, InterruptedException {
+        index();
+        try (
+                WatchService watcher = FileSystems.getDefault().newWatchService();
+                FileChannel channel = FileChannel.open(manifest, StandardOpenOption.READ, StandardOpenOption.WRITE)
+        ) {
+            for (Path directory : directories.keySet()) {
+                if (Files.isDirectory(directory)) {
+                    register(watcher, directory);
+                }
+            }
+            System.err.println("Watching " + records.size() + " files in " + keys.size() + " directories");
+
+            while (true) {
+                Set<Path> changed = new LinkedHashSet<>();
+                while (changed.isEmpty()) {
+                    collect(watcher, watcher.take(), changed);
+                }
+                long now = System.nanoTime();
+                long deadline = now + TimeUnit.MILLISECONDS.toNanos(MAX_BATCH_MILLIS);
+                long quiet = now + TimeUnit.MILLISECONDS.toNanos(DEBOUNCE_MILLIS);
+                while (now < quiet && now < deadline) {
+                    WatchKey key = watcher.poll(Math.min(quiet, deadline) - now, TimeUnit.NANOSECONDS);
+                    if (key == null) {
+                        break;
+                    }
+                    now = System.nanoTime();
+                    if (collect(watcher, key, changed)) {
+                        quiet = now + TimeUnit.MILLISECONDS.toNanos(DEBOUNCE_MILLIS);
+                    }
+                }
+                update(channel, changed);
+            }
+        } catch (ClosedWatchServiceException e) {
+            throw new IOException("Watch service closed", e);
+        }
+    }
+
+    private static Path absolute(Path path) {
+        return path.toAbsolutePath().normalize();
+    }
+
+    private void index() throws IOException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(manifest), 1 << 16)) {
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            long offset = 0;
+            long start = 0;
+            int b;
+            while ((b = in.read()) != -1) {
+                offset++;
+                if (b == '\n') {
+                    record(line.toByteArray(), start);
+                    line.reset();
+                    start = offset;
+                } else if (b != '\r') {
+                    line.write(b);
+                }
+            }
+            if (line.size() > 0) {
+                record(line.toByteArray(), start);
+            }
+        }
+    }
+
+    private void record(byte[] line, long start) {
+        if (line.length <= hex.length + 1) {
+            return;
+        }
+        String file = new String(line, hex.length + 1, line.length - hex.length - 1, StandardCharsets.UTF_8);
+        try {
+            Path path = Paths.get(file);
+            Path absolute = absolute(path);
+            if (ignored.contains(absolute)) {
+                return;
+            }
+            records.computeIfAbsent(absolute, p -> new ArrayList<>()).add(start);
+            Path parent = absolute.getParent();
+            if (parent != null) {
+                directories.putIfAbsent(parent, path.getParent() != null ? path.getParent() : Paths.get(""));
+            }
+        } catch (InvalidPathException ignored) {
+        }
+    }
+
+    private void register(WatchService watcher, Path directory) throws IOException {
+        keys.put(directory.register(watcher,
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY,
+                StandardWatchEventKinds.ENTRY_DELETE), directory);
+    }
+
+    // Adds files affected by events of the key to changed, returns whether any event was relevant
+    private boolean collect(WatchService watcher, WatchKey key, Set<Path> changed) {
+        Path directory = keys.get(key);
+        boolean relevant = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                for (Path file : records.keySet()) {
+                    if (directory.equals(file.getParent())) {
+                        changed.add(file);
+                        relevant = true;
+                    }
+                }
+                continue;
+            }
+            Path file = directory.resolve((Path) event.context());
+            if (ignored.contains(file)) {
+                continue;
+            }
+            if (records.containsKey(file) || recursive && event.kind() != StandardWatchEventKinds.ENTRY_DELETE && Files.isRegularFile(file)) {
+                changed.add(file);
+                relevant = true;
+            } else if (recursive && event.kind() == StandardWatchEventKinds.ENTRY_CREATE
+                    && Files.isDirectory(file, LinkOption.NOFOLLOW_LINKS) && !keys.containsValue(file)) {
+                relevant |= added(watcher, file, changed);
+            }
+        }
+        key.reset();
+        return relevant;
+    }
+
+    // Registers a new directory and its subdirectories, their files may have been created before registration
+    private boolean added(WatchService watcher, Path directory, Set<Path> changed) {
+        int before = changed.size();
+        try {
+            Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                    directories.putIfAbsent(dir, directories.get(dir.getParent()).resolve(dir.getFileName()));
+                    register(watcher, dir);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    if (attrs.isRegularFile() && !ignored.contains(file)) {
+                        changed.add(file);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            System.err.println("ERROR! Can't watch directory " + directory + ": " + e.getMessage());
+        }
+        return changed.size() > before;
+    }
+
+    private void update(FileChannel channel, Set<Path> changed) throws IOException {
+        for (Path file : changed) {
+            byte[] result = digest;
+            try {
+                hasher.hash(file, function);
+                function.digest(digest);
+            } catch (IOException e) {
+                result = null;
+            }
+            ManifestWriter.hex(result, digest.length, hex);
+
+            List<Long> offsets = records.get(file);
+            if (offsets != null) {
+                for (long offset : offsets) {
+                    channel.write(ByteBuffer.wrap(hex), offset);
+                }
+            } else if (result != null) {
+                append(channel, file);
+            }
+        }
+        if (!changed.isEmpty()) {
+            System.err.println("Updated " + changed.size() + " files");
+        }
+    }
+
+    private void append(FileChannel channel, Path file) throws IOException {
+        String name = directories.get(file.getParent()).resolve(file.getFileName()).toString();
+        byte[] path = name.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer line = ByteBuffer.allocate(hex.length + 1 + path.length + LINE_SEPARATOR.length);
+        line.put(hex).put((byte) ' ').put(path).put(LINE_SEPARATOR).flip();
+
+        long offset = channel.size();
+        while (line.hasRemaining()) {
+            offset += channel.write(line, offset);
+        }
+        records.computeIfAbsent(file, p -> new ArrayList<>()).add(offset - line.limit());
+    }
+}
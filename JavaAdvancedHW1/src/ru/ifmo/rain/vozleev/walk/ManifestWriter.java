@@ -0,0 +1,121 @@
+package ru.ifmo.rain.vozleev.walk;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes {@code hash path} lines in UTF-8 straight into a direct buffer that is drained to the output channel.
+ * Digests are hex-encoded into a reused array and paths are encoded from a reused char buffer,
+ * so writing a line allocates nothing.
+ */
+class ManifestWriter implements DigestSink, Closeable {
+
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private byte[] hex = new byte[0];
+    private CharBuffer chars = CharBuffer.allocate(256);
+
+    ManifestWriter(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Writes the first {@code length} bytes of {@code digest} in hex, a space, the path and a line separator.
+     * Missing digest is written as zeros.
+     */
+    @Override
+    public void write(byte[] digest, int length, String path) throws IOException {
+        if (hex.length < 2 * length) {
+            hex = new byte[2 * length];
+        }
+        hex(digest, length, hex);
+        put(hex, 2 * length);
+        ensure(1);
+        buffer.put((byte) ' ');
+        encode(path);
+        put(LINE_SEPARATOR, LINE_SEPARATOR.length);
+    }
+
+    /**
+     * Writes the first {@code length} bytes of {@code digest}, or zeros if it is {@code null}, as {@code 2 * length} hex digits.
+     */
+    static void hex(byte[] digest, int length, byte[] hex) {
+        for (int i = 0; i < length; i++) {
+            int b = digest == null ? 0 : digest[i];
+            hex[2 * i] = HEX_DIGITS[b >>> 4 & 0xf];
+            hex[2 * i + 1] = HEX_DIGITS[b & 0xf];
+        }
+    }
+
+    /**
+     * Writes an empty line.
+     */
+    void newLine() throws IOException {
+        put(LINE_SEPARATOR, LINE_SEPARATOR.length);
+    }
+
+    private void put(byte[] bytes, int length) throws IOException {
+        ensure(length);
+        buffer.put(bytes, 0, length);
+    }
+
+    private void ensure(int length) throws IOException {
+        if (buffer.remaining() < length) {
+            drain();
+        }
+    }
+
+    private void encode(String path) throws IOException {
+        if (chars.capacity() < path.length()) {
+            chars = CharBuffer.allocate(Math.max(path.length(), 2 * chars.capacity()));
+        }
+        chars.clear();
+        path.getChars(0, path.length(), chars.array(), 0);
+        chars.limit(path.length());
+
+        encoder.reset();
+        CoderResult result;
+        do {
+            result = encoder.encode(chars, buffer, true);
+            if (result.isOverflow()) {
+                drain();
+            }
+        } while (result.isOverflow());
+        while (encoder.flush(buffer).isOverflow()) {
+            drain();
+        }
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            drain();
+        } finally {
+            channel.close();
+        }
+    }
+}
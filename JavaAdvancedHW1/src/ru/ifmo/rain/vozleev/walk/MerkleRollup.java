@@ -0,0 +1,139 @@
+package ru.ifmo.rain.vozleev.walk;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Merkle rollup of a directory tree.
+ * <p>
+ * A file node holds the digest of its contents. A directory node holds
+ * {@code H(0x02 || for every child sorted by name: type, name length, UTF-8 name, digest)},
+ * so two trees with equal roots are equal and differing trees differ only below nodes with different digests.
+ * Subdirectories are processed as separate fork/join tasks. Symbolic links to directories inside the tree
+ * are left out of it, since following them could loop, while a root given as a link is followed.
+ * An entry that can't be read is reported to {@code System.err} and gets a zero digest, it is marked as failed
+ * and all directories above it as partial, so their digests are not trusted when comparing.
+ */
+class MerkleRollup implements AutoCloseable {
+
+    private static final byte DIRECTORY = 2;
+    private static final byte FILE = 3;
+
+    private final ForkJoinPool pool;
+    private final ContentHasher hasher;
+    private final ThreadLocal<HashFunction> functions;
+    private final int length;
+
+    static class Node {
+        final Path path;
+        final byte[] digest;
+        final Map<String, Node> children;
+        final boolean failed;
+        final boolean partial;
+
+        private Node(Path path, byte[] digest, Map<String, Node> children, boolean failed, boolean partial) {
+            this.path = path;
+            this.digest = digest;
+            this.children = children;
+            this.failed = failed;
+            this.partial = partial;
+        }
+
+        boolean isDirectory() {
+            return children != null;
+        }
+    }
+
+    MerkleRollup(int threads, HashAlgorithm algorithm, ContentHasher hasher) {
+        this.pool = new ForkJoinPool(threads);
+        this.hasher = hasher;
+        this.functions = ThreadLocal.withInitial(algorithm::create);
+        this.length = algorithm.create().length();
+    }
+
+    /**
+     * Builds the rollup of a file or a directory.
+     */
+    Node build(Path path) {
+        return pool.invoke(new Rollup(path));
+    }
+
+    private class Rollup extends RecursiveTask<Node> {
+        private static final long serialVersionUID = 1L;
+
+        private final Path path;
+
+        private Rollup(Path path) {
+            this.path = path;
+        }
+
+        @Override
+        protected Node compute() {
+            // Links to directories below the root are filtered out by directory()
+            boolean directory = Files.isDirectory(path);
+            try {
+                return directory ? directory() : file();
+            } catch (IOException | InvalidPathException e) {
+                System.err.println("ERROR! Can't read " + path + ": " + e.getMessage());
+                return new Node(path, new byte[length], directory ? Collections.emptyMap() : null, true, false);
+            }
+        }
+
+        private Node file() throws IOException {
+            HashFunction function = functions.get();
+            hasher.hash(path, function);
+            byte[] digest = new byte[length];
+            function.digest(digest);
+            return new Node(path, digest, null, false, false);
+        }
+
+        private Node directory() throws IOException {
+            List<Rollup> tasks = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(path)) {
+                for (Path child : stream) {
+                    if (!Files.isSymbolicLink(child) || !Files.isDirectory(child)) {
+                        tasks.add(new Rollup(child));
+                    }
+                }
+            }
+            Map<String, Node> children = new TreeMap<>();
+            boolean partial = false;
+            for (Rollup task : invokeAll(tasks)) {
+                Node child = task.join();
+                children.put(child.path.getFileName().toString(), child);
+                partial |= child.failed || child.partial;
+            }
+
+            HashFunction function = functions.get();
+            function.reset();
+            function.update(ByteBuffer.wrap(new byte[]{DIRECTORY}));
+            for (Map.Entry<String, Node> entry : children.entrySet()) {
+                byte[] name = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                ByteBuffer header = ByteBuffer.allocate(1 + Integer.BYTES + name.length);
+                header.put(entry.getValue().isDirectory() ? DIRECTORY : FILE).putInt(name.length).put(name).flip();
+                function.update(header);
+                function.update(ByteBuffer.wrap(entry.getValue().digest));
+            }
+            byte[] digest = new byte[length];
+            function.digest(digest);
+            return new Node(path, digest, Collections.unmodifiableMap(children), false, partial);
+        }
+    }
+
+    @Override
+    public void close() {
+        pool.shutdownNow();
+    }
+}
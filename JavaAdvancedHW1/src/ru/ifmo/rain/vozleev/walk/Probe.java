@@ -0,0 +1,29 @@
+package ru.ifmo.rain.vozleev.walk;
+
+/**
+ * Time spent by the current thread in phases of hashing a file, filled by {@link FileHasher}.
+ * Probes are thread-confined, so updating them needs no synchronization.
+ */
+final class Probe {
+
+    private static final ThreadLocal<Probe> CURRENT = ThreadLocal.withInitial(Probe::new);
+
+    long open;
+    long read;
+    long hash;
+    long bytes;
+
+    private Probe() {
+    }
+
+    static Probe current() {
+        return CURRENT.get();
+    }
+
+    void reset() {
+        open = 0;
+        read = 0;
+        hash = 0;
+        bytes = 0;
+    }
+}
@@ -0,0 +1,10 @@
+package ru.ifmo.rain.vozleev.walk;
+
+/**
+ * Same as {@link Walk}, but every directory in the input file is replaced by all files inside it, in depth-first order.
+ */
+public class RecursiveWalk {
+    public static void main(String[] args) {
+        Walk.run(args, true);
+    }
+}
@@ -0,0 +1,46 @@
+package ru.ifmo.rain.vozleev.walk;
+
+import java.nio.ByteBuffer;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * SHA-256 backed by {@link MessageDigest}.
+ */
+class Sha256 implements HashFunction {
+
+    private final MessageDigest digest;
+
+    Sha256() {
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public int length() {
+        return 32;
+    }
+
+    @Override
+    public void reset() {
+        digest.reset();
+    }
+
+    @Override
+    public void update(ByteBuffer buffer) {
+        digest.update(buffer);
+    }
+
+    @Override
+    public void digest(byte[] digest) {
+        try {
+            this.digest.digest(digest, 0, length());
+        } catch (DigestException e) {
+            throw new IllegalArgumentException("Digest buffer is too small: " + e.getMessage(), e);
+        }
+    }
+}
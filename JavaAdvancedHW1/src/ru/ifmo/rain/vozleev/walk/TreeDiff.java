@@ -0,0 +1,129 @@
+package ru.ifmo.rain.vozleev.walk;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeSet;
+
+/**
+ * Compares two directory trees by their {@link MerkleRollup}s, descending only into subtrees with different digests.
+ * <p>
+ * Usage: {@code TreeDiff [--threads N] [--hash NAME] [--tree SIZE] left right}.
+ * Prints {@code M path} for changed files, {@code A path} for files only in the right tree
+ * and {@code D path} for files only in the left one, paths are relative to the tree roots.
+ * Entries that can't be read are reported to {@code System.err} and skipped, symbolic links to directories
+ * inside the trees are not followed and don't take part in the comparison.
+ */
+public class TreeDiff {
+    private static final String USAGE = "Usage: TreeDiff [--threads N] [--hash NAME] [--tree SIZE] left right";
+
+    private static class Options {
+        int threads = 1;
+        HashAlgorithm algorithm = HashAlgorithm.FNV32;
+        long chunk;
+        Path left;
+        Path right;
+    }
+
+    /**
+     * @throws IllegalArgumentException if arguments are malformed, the message describes the problem
+     */
+    private static Options parse(String[] args) {
+        if (args == null || Arrays.stream(args).anyMatch(Objects::isNull)) {
+            throw new IllegalArgumentException(USAGE);
+        }
+
+        Options options = new Options();
+        int pos = 0;
+        while (pos < args.length && args[pos].startsWith("--")) {
+            String option = args[pos++];
+            if (pos == args.length) {
+                throw new IllegalArgumentException("ERROR! Missing value of option " + option);
+            }
+            String value = args[pos++];
+            switch (option) {
+                case "--threads":
+                    options.threads = WalkOptions.parseCount(value, "Amount of threads");
+                    break;
+                case "--hash":
+                    options.algorithm = HashAlgorithm.forName(value);
+                    break;
+                case "--tree":
+                    options.chunk = WalkOptions.parseSize(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("ERROR! Unknown option: " + option + System.lineSeparator() + USAGE);
+            }
+        }
+        if (args.length - pos != 2) {
+            throw new IllegalArgumentException("Enter two directories to compare!" + System.lineSeparator() + USAGE);
+        }
+        // InvalidPathException is an IllegalArgumentException as well
+        options.left = Paths.get(args[pos]);
+        options.right = Paths.get(args[pos + 1]);
+        return options;
+    }
+
+    public static void main(String[] args) {
+        Options options;
+        try {
+            options = parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            return;
+        }
+
+        try (
+                TreeHasher tree = options.chunk > 0 ? new TreeHasher(options.threads, options.algorithm, options.chunk) : null;
+                MerkleRollup rollup = new MerkleRollup(options.threads, options.algorithm, tree != null ? tree : FileHasher::hash)
+        ) {
+            MerkleRollup.Node left = rollup.build(options.left);
+            MerkleRollup.Node right = rollup.build(options.right);
+            diff(left, right, "");
+        }
+    }
+
+    private static void diff(MerkleRollup.Node left, MerkleRollup.Node right, String path) {
+        if (left.failed || right.failed) {
+            return;
+        }
+        if (Arrays.equals(left.digest, right.digest) && left.isDirectory() == right.isDirectory() && !left.partial && !right.partial) {
+            return;
+        }
+        if (!left.isDirectory() || !right.isDirectory()) {
+            if (left.isDirectory() || right.isDirectory()) {
+                report('D', left, path);
+                report('A', right, path);
+            } else {
+                System.out.println("M " + path);
+            }
+            return;
+        }
+        TreeSet<String> names = new TreeSet<>(left.children.keySet());
+        names.addAll(right.children.keySet());
+        for (String name : names) {
+            MerkleRollup.Node l = left.children.get(name);
+            MerkleRollup.Node r = right.children.get(name);
+            String child = path.isEmpty() ? name : path + "/" + name;
+            if (l == null) {
+                report('A', r, child);
+            } else if (r == null) {
+                report('D', l, child);
+            } else {
+                diff(l, r, child);
+            }
+        }
+    }
+
+    private static void report(char change, MerkleRollup.Node node, String path) {
+        if (!node.isDirectory()) {
+            System.out.println(change + " " + path);
+            return;
+        }
+        for (Map.Entry<String, MerkleRollup.Node> entry : node.children.entrySet()) {
+            report(change, entry.getValue(), path.isEmpty() ? entry.getKey() : path + "/" + entry.getKey());
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package ru.ifmo.rain.vozleev.walk;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Merkle tree hash of file contents.
+ * <p>
+ * The file is split into chunks of fixed size that are hashed concurrently with positional reads.
+ * Leaves are {@code H(0x00 || chunk)}, inner nodes are {@code H(0x01 || left || right)}
+ * and the tree is shaped as in RFC 6962: the left subtree of {@code n} chunks holds the largest power of two
+ * smaller than {@code n}. A file of at most one chunk, including the empty one, is a single leaf.
+ * Read and hash times of all leaves and their bytes are added to the {@link Probe} of the calling thread.
+ */
+class TreeHasher implements ContentHasher, AutoCloseable {
+
+    private static final byte LEAF = 0;
+    private static final byte NODE = 1;
+
+    private final ForkJoinPool pool;
+    private final long chunk;
+    private final ThreadLocal<HashFunction> functions;
+    private final int length;
+
+    TreeHasher(int threads, HashAlgorithm algorithm, long chunk) {
+        this.pool = new ForkJoinPool(threads);
+        this.chunk = chunk;
+        this.functions = ThreadLocal.withInitial(algorithm::create);
+        this.length = algorithm.create().length();
+    }
+
+    private class Subtree extends RecursiveTask<byte[]> {
+        private static final long serialVersionUID = 1L;
+
+        private final FileChannel channel;
+        private final long size;
+        private final long from;
+        private final long to;
+        // Probe counters spent on the leaves of this subtree
+        private long read;
+        private long hash;
+        private long bytes;
+
+        private Subtree(FileChannel channel, long size, long from, long to) {
+            this.channel = channel;
+            this.size = size;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected byte[] compute() {
+            HashFunction function = functions.get();
+            if (to - from == 1) {
+                Probe probe = Probe.current();
+                long read = probe.read;
+                long hash = probe.hash;
+                long bytes = probe.bytes;
+                try {
+                    leaf(channel, size, from, function);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                this.read = probe.read - read;
+                this.hash = probe.hash - hash;
+                this.bytes = probe.bytes - bytes;
+            } else {
+                long split = from + Long.highestOneBit(to - from - 1);
+                Subtree left = new Subtree(channel, size, from, split);
+                left.fork();
+                Subtree right = new Subtree(channel, size, split, to);
+                byte[] digest = right.compute();
+                node(left.join(), digest, function);
+                add(left);
+                add(right);
+            }
+            byte[] digest = new byte[length];
+            function.digest(digest);
+            return digest;
+        }
+
+        private void add(Subtree child) {
+            read += child.read;
+            hash += child.hash;
+            bytes += child.bytes;
+        }
+    }
+
+    private void leaf(FileChannel channel, long size, long index, HashFunction function) throws IOException {
+        long position = index * chunk;
+        function.reset();
+        function.update(ByteBuffer.wrap(new byte[]{LEAF}));
+        FileHasher.range(channel, position, Math.min(chunk, size - position), function);
+    }
+
+    private static void node(byte[] left, byte[] right, HashFunction function) {
+        function.reset();
+        function.update(ByteBuffer.wrap(new byte[]{NODE}));
+        function.update(ByteBuffer.wrap(left));
+        function.update(ByteBuffer.wrap(right));
+    }
+
+    /**
+     * Leaves the root of the file tree as the digest of {@code function}.
+     */
+    @Override
+    public void hash(Path file, HashFunction function) throws IOException {
+        try (FileChannel channel = FileHasher.open(file)) {
+            long size = channel.size();
+            long chunks = Math.max(1, (size + chunk - 1) / chunk);
+            if (chunks == 1) {
+                leaf(channel, size, 0, function);
+                return;
+            }
+            long split = Long.highestOneBit(chunks - 1);
+            Subtree left = new Subtree(channel, size, 0, split);
+            Subtree right = new Subtree(channel, size, split, chunks);
+            pool.execute(left);
+            byte[] digest = pool.invoke(right);
+            node(left.join(), digest, function);
+            Probe probe = Probe.current();
+            probe.read += left.read + right.read;
+            probe.hash += left.hash + right.hash;
+            probe.bytes += left.bytes + right.bytes;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    @Override
+    public void close() {
+        pool.shutdownNow();
+    }
+}
@@ -0,0 +1,133 @@
+package ru.ifmo.rain.vozleev.walk;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Checks that {@link TreeHasher} and {@link MerkleRollup} digests depend only on contents.
+ */
+public class TreeHasherTest {
+    private static final Random RANDOM = new Random(2384756109283745L);
+    private static final HashAlgorithm ALGORITHM = HashAlgorithm.SHA256;
+    private static final int CHUNK = 1024;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void test01_shape() throws IOException {
+        byte[] contents = random(3 * CHUNK + 17);
+        byte[] c0 = leaf(Arrays.copyOfRange(contents, 0, CHUNK));
+        byte[] c1 = leaf(Arrays.copyOfRange(contents, CHUNK, 2 * CHUNK));
+        byte[] c2 = leaf(Arrays.copyOfRange(contents, 2 * CHUNK, 3 * CHUNK));
+        byte[] c3 = leaf(Arrays.copyOfRange(contents, 3 * CHUNK, contents.length));
+        // Left subtree of 4 chunks holds 2 of them
+        byte[] root = node(node(c0, c1), node(c2, c3));
+        Assert.assertArrayEquals(root, tree(file(contents), 2, CHUNK));
+
+        byte[] small = random(CHUNK);
+        Assert.assertArrayEquals(leaf(small), tree(file(small), 2, CHUNK));
+        Assert.assertArrayEquals(leaf(new byte[0]), tree(file(new byte[0]), 2, CHUNK));
+    }
+
+    @Test
+    public void test02_threads() throws IOException {
+        for (int size : new int[]{CHUNK + 1, 5 * CHUNK, 37 * CHUNK + 5, 200 * CHUNK}) {
+            Path file = file(random(size));
+            byte[] expected = tree(file, 1, CHUNK);
+            for (int threads : new int[]{2, 3, 8}) {
+                Assert.assertArrayEquals("size " + size, expected, tree(file, threads, CHUNK));
+            }
+        }
+    }
+
+    @Test
+    public void test03_probe() throws IOException {
+        // Leaves are hashed by pool workers, but their bytes belong to the caller
+        Path file = file(random(10 * CHUNK + 3));
+        Probe probe = Probe.current();
+        probe.reset();
+        tree(file, 3, CHUNK);
+        Assert.assertEquals(10 * CHUNK + 3, probe.bytes);
+    }
+
+    @Test
+    public void test04_rollup() throws IOException {
+        Path left = folder.newFolder("left").toPath();
+        Path right = folder.newFolder("right").toPath();
+        for (Path root : new Path[]{left, right}) {
+            Files.createDirectories(root.resolve("a/b"));
+            Files.writeString(root.resolve("a/b/file"), "contents");
+            Files.writeString(root.resolve("a/other"), "other");
+            Files.createDirectories(root.resolve("empty"));
+        }
+        Assert.assertArrayEquals(rollup(left, 1).digest, rollup(right, 4).digest);
+
+        Files.createSymbolicLink(right.resolve("link"), right.resolve("a"));
+        Assert.assertArrayEquals(rollup(left, 1).digest, rollup(right, 2).digest);
+
+        Files.writeString(right.resolve("a/b/file"), "changed");
+        MerkleRollup.Node changed = rollup(right, 2);
+        MerkleRollup.Node original = rollup(left, 2);
+        Assert.assertFalse(Arrays.equals(original.digest, changed.digest));
+        Assert.assertArrayEquals(original.children.get("empty").digest, changed.children.get("empty").digest);
+        Assert.assertArrayEquals(original.children.get("a").children.get("other").digest,
+                changed.children.get("a").children.get("other").digest);
+    }
+
+    private Path file(byte[] contents) throws IOException {
+        return Files.write(folder.newFile().toPath(), contents);
+    }
+
+    private static byte[] random(int size) {
+        byte[] bytes = new byte[size];
+        RANDOM.nextBytes(bytes);
+        return bytes;
+    }
+
+    private static byte[] tree(Path file, int threads, long chunk) throws IOException {
+        try (TreeHasher hasher = new TreeHasher(threads, ALGORITHM, chunk)) {
+            HashFunction function = ALGORITHM.create();
+            hasher.hash(file, function);
+            return digest(function);
+        }
+    }
+
+    private static MerkleRollup.Node rollup(Path root, int threads) {
+        try (MerkleRollup rollup = new MerkleRollup(threads, ALGORITHM, FileHasher::hash)) {
+            return rollup.build(root);
+        }
+    }
+
+    private static byte[] leaf(byte[] chunk) {
+        return hash(new byte[]{0}, chunk);
+    }
+
+    private static byte[] node(byte[] left, byte[] right) {
+        return hash(new byte[]{1}, left, right);
+    }
+
+    private static byte[] hash(byte[]... parts) {
+        HashFunction function = ALGORITHM.create();
+        function.reset();
+        for (byte[] part : parts) {
+            function.update(ByteBuffer.wrap(part));
+        }
+        return digest(function);
+    }
+
+    private static byte[] digest(HashFunction function) {
+        byte[] digest = new byte[function.length()];
+        function.digest(digest);
+        return digest;
+    }
+}
@@ -9,25 +9,51 @@
 package ru.ifmo.rain.vozleev.walk;
 
 import java.io.*;
-import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.InvalidPathException;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-
-import static java.nio.file.Paths.*;
+import java.util.ArrayList;
+import java.util.List;
 
 
 public class Walk {
     public static void main(String[] args) {
-        if (args == null || args.length != 2 || args[0] == null || args[1] == null) {
-            System.err.println("Enter the name of correct input and output files!");
+        run(args, false);
+    }
+
+    /**
+     * Hashes files listed in the input file, or finds duplicates among them with {@code --dedup}.
+     * In recursive mode directories are expanded into the files they contain.
+     */
+    static void run(String[] args, boolean recursive) {
+        WalkOptions options;
+        try {
+            options = WalkOptions.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
             return;
         }
 
+        HashCache cache = null;
+        if (options.cache != null) {
+            try {
+                cache = HashCache.load(options.cache, options.scheme(), options.algorithm.create().length());
+            } catch (IOException e) {
+                System.err.println("ERROR! Can't read hash cache, starting with an empty one: " + e.getMessage());
+                cache = new HashCache(options.cache, options.scheme(), options.algorithm.create().length());
+            }
+        }
+
+        WalkStats stats = options.progress > 0 || options.stats != null ? new WalkStats() : null;
+        if (stats != null && options.progress > 0) {
+            stats.startProgress(options.progress);
+        }
+
         Path outputPath;
         try {
-            outputPath = Paths.get(args[1]).getParent();
+            outputPath = Paths.get(options.output).getParent();
             if (outputPath != null) {
                 Files.createDirectories(outputPath);
             }
@@ -39,41 +65,86 @@ public class Walk {
         }
 
         try (
-                BufferedReader inputFile = new BufferedReader(new FileReader(new File(args[0]), Charset.forName("UTF-8")));
-                BufferedWriter outputFile = new BufferedWriter(new FileWriter(new File(args[1]), Charset.forName("UTF-8")))
+                ManifestReader inputFile = new ManifestReader(Paths.get(options.input));
+                ManifestWriter outputFile = new ManifestWriter(Paths.get(options.output));
+                TreeHasher tree = options.chunk > 0 ? new TreeHasher(options.threads, options.algorithm, options.chunk) : null;
+                ManifestIndexWriter index = options.index != null ? new ManifestIndexWriter(options.index) : null
         ) {
-            String pathToFile = inputFile.readLine();
-            while (pathToFile != null) {
-                outputFile.write(hash32(pathToFile) + " " + pathToFile + System.lineSeparator());
-                pathToFile = inputFile.readLine();
+            ContentHasher hasher = tree != null ? tree : FileHasher::hash;
+            DigestSink output = index == null ? outputFile : (digest, length, file) -> {
+                outputFile.write(digest, length, file);
+                index.write(digest, length, file);
+            };
+            if (options.dedup) {
+                DuplicateFinder finder = new DuplicateFinder(options.threads, options.algorithm, cache, hasher, stats);
+                submitAll(inputFile, finder, options.threads, recursive);
+                finder.write(outputFile);
+            } else if (options.depth > 0) {
+                try (AsyncHashingEngine engine = new AsyncHashingEngine(options.threads, options.depth, output, options.algorithm, stats)) {
+                    submitAll(inputFile, engine, options.threads, recursive);
+                }
+            } else {
+                try (HashingEngine engine = new HashingEngine(options.threads, output, options.algorithm, cache, hasher, stats)) {
+                    submitAll(inputFile, engine, options.threads, recursive);
+                }
             }
-        } catch (FileNotFoundException e) {
+        } catch (InvalidPathException e) {
+            System.err.println("ERROR! Input file is invalid: " + e.getMessage());
+        } catch (NoSuchFileException e) {
             System.err.println("ERROR! File not found: " + e.getMessage());
-        } catch (UnsupportedEncodingException e) {
-            System.err.println("ERROR! Unsupported Encoding: " + e.getMessage());
         } catch (IOException e) {
             System.err.println("Input ERROR: " + e.getMessage());
         }
-    }
 
-    private static final int FNV_32_PRIME = 0x01000193;
+        if (cache != null) {
+            try {
+                cache.save();
+            } catch (IOException e) {
+                System.err.println("ERROR! Can't write hash cache: " + e.getMessage());
+            }
+            System.err.println("Hash cache: " + cache.hits() + " hits, " + cache.misses() + " misses");
+        }
 
-    private static String hash32(String file) {
-        try (BufferedInputStream reader = new BufferedInputStream(Files.newInputStream(get(file)))) {
-            int hval = 0x811c9dc5;
-            byte[] bytes = new byte[1024];
-            int count;
-            while ((count = reader.read(bytes)) != -1) {
-                for (int i = 0; i < count; i++) {
-                    hval = (hval * FNV_32_PRIME) ^ (bytes[i] & 0xff);
+        if (stats != null) {
+            stats.close();
+            System.err.println(stats.progress());
+            if (options.stats != null) {
+                try {
+                    stats.writeJson(options.stats);
+                } catch (IOException e) {
+                    System.err.println("ERROR! Can't write statistics: " + e.getMessage());
                 }
             }
+        }
 
-            return String.format("%08x", hval);
-        } catch (IOException | InvalidPathException e) {
-            System.err.println("ERROR! File not found: " + file);
-            return "00000000";
+        if (options.watch) {
+            try (TreeHasher tree = options.chunk > 0 ? new TreeHasher(options.threads, options.algorithm, options.chunk) : null) {
+                List<Path> ignored = new ArrayList<>();
+                for (Path file : new Path[]{options.cache, options.stats}) {
+                    if (file != null) {
+                        ignored.add(file);
+                    }
+                }
+                new ManifestWatcher(Paths.get(options.output), ignored, options.algorithm, tree != null ? tree : FileHasher::hash, recursive).run();
+            } catch (IOException e) {
+                System.err.println("ERROR! Can't watch files: " + e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
         }
     }
-}
 
+    private static void submitAll(ManifestReader inputFile, FileSink sink, int threads, boolean recursive) throws IOException {
+        try (DirectoryTraversal traversal = recursive ? new DirectoryTraversal(threads, sink) : null) {
+            String pathToFile = inputFile.readLine();
+            while (pathToFile != null) {
+                if (traversal != null) {
+                    traversal.submit(pathToFile);
+                } else {
+                    sink.submit(pathToFile);
+                }
+                pathToFile = inputFile.readLine();
+            }
+        }
+    }
+}
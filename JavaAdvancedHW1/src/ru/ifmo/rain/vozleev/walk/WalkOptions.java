@@ -0,0 +1,147 @@
+package ru.ifmo.rain.vozleev.walk;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Command line options of {@link Walk}: {@code [--threads N] [--async DEPTH] [--hash NAME] [--tree SIZE] [--cache FILE] [--dedup] [--watch]
+ * [--index FILE] [--progress SECONDS] [--stats FILE] input output}.
+ * <p>
+ * {@code --async} can't be combined with {@code --tree}, {@code --cache} and {@code --dedup},
+ * {@code --watch} can't be combined with {@code --dedup} and {@code --index}, {@code --index} can't be combined with {@code --dedup}.
+ */
+class WalkOptions {
+
+    int threads = 1;
+    int depth;
+    HashAlgorithm algorithm = HashAlgorithm.FNV32;
+    long chunk;
+    Path cache;
+    boolean dedup;
+    boolean watch;
+    Path index;
+    int progress;
+    Path stats;
+    String input;
+    String output;
+
+    /**
+     * @throws IllegalArgumentException if arguments are malformed, the message describes the problem
+     */
+    static WalkOptions parse(String[] args) {
+        if (args == null || Arrays.stream(args).anyMatch(Objects::isNull)) {
+            throw new IllegalArgumentException("Enter the name of correct input and output files!");
+        }
+
+        WalkOptions options = new WalkOptions();
+        int pos = 0;
+        while (pos < args.length && args[pos].startsWith("--")) {
+            String option = args[pos++];
+            if (option.equals("--dedup")) {
+                options.dedup = true;
+                continue;
+            }
+            if (option.equals("--watch")) {
+                options.watch = true;
+                continue;
+            }
+            if (pos == args.length) {
+                throw new IllegalArgumentException("ERROR! Missing value of option " + option);
+            }
+            String value = args[pos++];
+            switch (option) {
+                case "--threads":
+                    options.threads = parseCount(value, "Amount of threads");
+                    break;
+                case "--async":
+                    options.depth = parseCount(value, "Queue depth");
+                    break;
+                case "--hash":
+                    options.algorithm = HashAlgorithm.forName(value);
+                    break;
+                case "--tree":
+                    options.chunk = parseSize(value);
+                    break;
+                case "--cache":
+                    options.cache = Paths.get(value);
+                    break;
+                case "--index":
+                    options.index = Paths.get(value);
+                    break;
+                case "--progress":
+                    options.progress = parseCount(value, "Progress interval");
+                    break;
+                case "--stats":
+                    options.stats = Paths.get(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("ERROR! Unknown option: " + option);
+            }
+        }
+        if (args.length - pos != 2) {
+            throw new IllegalArgumentException("Enter the name of correct input and output files!");
+        }
+        if (options.depth > 0 && (options.chunk > 0 || options.cache != null || options.dedup)) {
+            throw new IllegalArgumentException("ERROR! --async can't be combined with --tree, --cache or --dedup");
+        }
+        if (options.watch && (options.dedup || options.index != null)) {
+            throw new IllegalArgumentException("ERROR! --watch can't be combined with --dedup or --index");
+        }
+        if (options.index != null && options.dedup) {
+            throw new IllegalArgumentException("ERROR! --index can't be combined with --dedup");
+        }
+        options.input = args[pos];
+        options.output = args[pos + 1];
+        return options;
+    }
+
+    /**
+     * Returns name of the way files are hashed, digests of different schemes are not comparable.
+     */
+    String scheme() {
+        return chunk > 0 ? algorithm.algorithmName() + "/tree:" + chunk : algorithm.algorithmName();
+    }
+
+    /**
+     * Parses size in bytes with optional {@code K}, {@code M} or {@code G} suffix.
+     */
+    static long parseSize(String value) {
+        int shift = 0;
+        String digits = value;
+        if (!value.isEmpty()) {
+            int suffix = "KMG".indexOf(Character.toUpperCase(value.charAt(value.length() - 1)));
+            if (suffix >= 0) {
+                shift = 10 * (suffix + 1);
+                digits = value.substring(0, value.length() - 1);
+            }
+        }
+        long size;
+        try {
+            size = Long.parseLong(digits);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("ERROR! Chunk size must be a number: " + e.getMessage());
+        }
+        if (size <= 0) {
+            throw new IllegalArgumentException("ERROR! Chunk size must be positive.");
+        }
+        if (size > Long.MAX_VALUE >> shift) {
+            throw new IllegalArgumentException("ERROR! Chunk size is too large: " + value);
+        }
+        return size << shift;
+    }
+
+    static int parseCount(String value, String name) {
+        int count;
+        try {
+            count = Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("ERROR! " + name + " must be a number: " + e.getMessage());
+        }
+        if (count <= 0) {
+            throw new IllegalArgumentException("ERROR! " + name + " must be at least 1.");
+        }
+        return count;
+    }
+}
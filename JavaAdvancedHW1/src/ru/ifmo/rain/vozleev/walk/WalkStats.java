@@ -0,0 +1,245 @@
+package ru.ifmo.rain.vozleev.walk;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Throughput and latency statistics of a run.
+ * <p>
+ * Counters and latency histograms are {@link LongAdder}s, the slowest files are kept in a heap per thread,
+ * so recording takes no locks. Histograms have power-of-two nanosecond buckets.
+ */
+class WalkStats implements AutoCloseable {
+
+    enum ErrorKind {
+        NOT_FOUND, ACCESS_DENIED, INVALID_PATH, IO;
+
+        static ErrorKind of(Exception e) {
+            if (e instanceof NoSuchFileException) {
+                return NOT_FOUND;
+            } else if (e instanceof AccessDeniedException) {
+                return ACCESS_DENIED;
+            } else if (e instanceof InvalidPathException) {
+                return INVALID_PATH;
+            }
+            return IO;
+        }
+    }
+
+    private static final int SLOWEST = 10;
+
+    private final long started = System.nanoTime();
+    private final LongAdder files = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final Map<ErrorKind, LongAdder> errors = new EnumMap<>(ErrorKind.class);
+    private final Histogram total = new Histogram();
+    private final Histogram open = new Histogram();
+    private final Histogram read = new Histogram();
+    private final Histogram hash = new Histogram();
+    private final Queue<PriorityQueue<Sample>> slowest = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<PriorityQueue<Sample>> localSlowest = ThreadLocal.withInitial(() -> {
+        PriorityQueue<Sample> heap = new PriorityQueue<>(SLOWEST + 1, Comparator.comparingLong(sample -> sample.nanos));
+        slowest.add(heap);
+        return heap;
+    });
+    private ScheduledExecutorService progress;
+
+    private static class Histogram {
+        private final LongAdder[] buckets = new LongAdder[Long.SIZE];
+
+        private Histogram() {
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        private void record(long nanos) {
+            buckets[Long.SIZE - 1 - Long.numberOfLeadingZeros(Math.max(1, nanos))].increment();
+        }
+
+        /**
+         * Returns upper bound of the bucket holding the given quantile.
+         */
+        private long quantile(double q) {
+            long[] counts = new long[buckets.length];
+            long count = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                counts[i] = buckets[i].sum();
+                count += counts[i];
+            }
+            long rank = (long) Math.ceil(q * count);
+            for (int i = 0; i < counts.length; i++) {
+                rank -= counts[i];
+                if (rank <= 0 && counts[i] > 0) {
+                    return i == Long.SIZE - 2 ? Long.MAX_VALUE : (1L << (i + 1)) - 1;
+                }
+            }
+            return 0;
+        }
+
+        private void json(StringBuilder out) {
+            out.append("{\"p50\": ").append(quantile(0.5))
+                    .append(", \"p90\": ").append(quantile(0.9))
+                    .append(", \"p99\": ").append(quantile(0.99))
+                    .append(", \"buckets\": [");
+            for (int i = 0; i < buckets.length; i++) {
+                out.append(i == 0 ? "" : ", ").append(buckets[i].sum());
+            }
+            out.append("]}");
+        }
+    }
+
+    private static class Sample {
+        private final String file;
+        private final long nanos;
+
+        private Sample(String file, long nanos) {
+            this.file = file;
+            this.nanos = nanos;
+        }
+    }
+
+    WalkStats() {
+        for (ErrorKind kind : ErrorKind.values()) {
+            errors.put(kind, new LongAdder());
+        }
+    }
+
+    /**
+     * Records a hashed file, phase times are taken from {@code probe}.
+     */
+    void record(String file, long nanos, Probe probe) {
+        files.increment();
+        bytes.add(probe.bytes);
+        total.record(nanos);
+        open.record(probe.open);
+        read.record(probe.read);
+        hash.record(probe.hash);
+        slowest(file, nanos);
+    }
+
+    private void slowest(String file, long nanos) {
+        PriorityQueue<Sample> heap = localSlowest.get();
+        if (heap.size() < SLOWEST || heap.peek().nanos < nanos) {
+            heap.add(new Sample(file, nanos));
+            if (heap.size() > SLOWEST) {
+                heap.poll();
+            }
+        }
+    }
+
+    /**
+     * Records a hashed file of {@code size} bytes without the split into phases.
+     */
+    void record(String file, long nanos, long size) {
+        files.increment();
+        bytes.add(size);
+        total.record(nanos);
+        slowest(file, nanos);
+    }
+
+    void error(Exception e) {
+        errors.get(ErrorKind.of(e)).increment();
+    }
+
+    /**
+     * Prints progress to {@code System.err} every {@code seconds} seconds until {@link #close()}.
+     */
+    void startProgress(int seconds) {
+        progress = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "walk-progress");
+            thread.setDaemon(true);
+            return thread;
+        });
+        progress.scheduleAtFixedRate(() -> System.err.println(progress()), seconds, seconds, TimeUnit.SECONDS);
+    }
+
+    String progress() {
+        double seconds = Math.max(1e-9, (System.nanoTime() - started) / 1e9);
+        long filesDone = files.sum();
+        long bytesDone = bytes.sum();
+        long failed = errors.values().stream().mapToLong(LongAdder::sum).sum();
+        return String.format("%d files, %.1f MiB, %d errors in %.1f s: %.1f files/s, %.1f MiB/s",
+                filesDone, bytesDone / 1048576.0, failed, seconds, filesDone / seconds, bytesDone / 1048576.0 / seconds);
+    }
+
+    /**
+     * Writes the summary as JSON. Must be called after all files are recorded.
+     */
+    void writeJson(Path file) throws IOException {
+        double seconds = (System.nanoTime() - started) / 1e9;
+        StringBuilder out = new StringBuilder("{\n");
+        out.append("  \"files\": ").append(files.sum()).append(",\n");
+        out.append("  \"bytes\": ").append(bytes.sum()).append(",\n");
+        out.append("  \"seconds\": ").append(seconds).append(",\n");
+        out.append("  \"filesPerSecond\": ").append(files.sum() / seconds).append(",\n");
+        out.append("  \"bytesPerSecond\": ").append(bytes.sum() / seconds).append(",\n");
+        out.append("  \"errors\": {");
+        for (ErrorKind kind : ErrorKind.values()) {
+            out.append(kind.ordinal() == 0 ? "" : ", ").append('"').append(kind).append("\": ").append(errors.get(kind).sum());
+        }
+        out.append("},\n  \"latencyNanos\": {\n    \"total\": ");
+        total.json(out);
+        out.append(",\n    \"open\": ");
+        open.json(out);
+        out.append(",\n    \"read\": ");
+        read.json(out);
+        out.append(",\n    \"hash\": ");
+        hash.json(out);
+        out.append("\n  },\n  \"slowest\": [");
+
+        List<Sample> samples = new ArrayList<>();
+        slowest.forEach(samples::addAll);
+        samples.sort(Comparator.comparingLong((Sample sample) -> sample.nanos).reversed());
+        for (int i = 0; i < Math.min(SLOWEST, samples.size()); i++) {
+            out.append(i == 0 ? "\n    " : ",\n    ").append("{\"file\": ");
+            quote(samples.get(i).file, out);
+            out.append(", \"nanos\": ").append(samples.get(i).nanos).append('}');
+        }
+        out.append("\n  ]\n}\n");
+
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write(out.toString());
+        }
+    }
+
+    private static void quote(String value, StringBuilder out) {
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.append('\\').append(c);
+            } else if (c < 0x20) {
+                out.append(String.format("\\u%04x", (int) c));
+            } else {
+                out.append(c);
+            }
+        }
+        out.append('"');
+    }
+
+    @Override
+    public void close() {
+        if (progress != null) {
+            progress.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package ru.ifmo.rain.vozleev.walk;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * xxHash64 with zero seed. Input is consumed in 32-byte stripes of four 8-byte lanes,
+ * a partial stripe is kept between {@link #update(ByteBuffer)} calls.
+ */
+class XxHash64 implements HashFunction {
+
+    private static final long PRIME1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME3 = 0x165667B19E3779F9L;
+    private static final long PRIME4 = 0x85EBCA77C2B2AE63L;
+    private static final long PRIME5 = 0x27D4EB2F165667C5L;
+
+    private static final int STRIPE = 32;
+
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle ARRAY_LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle ARRAY_INTS = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private final byte[] pending = new byte[STRIPE];
+    private int pendingSize;
+    private long total;
+    private long v1;
+    private long v2;
+    private long v3;
+    private long v4;
+
+    XxHash64() {
+        reset();
+    }
+
+    @Override
+    public int length() {
+        return Long.BYTES;
+    }
+
+    @Override
+    public void reset() {
+        v1 = PRIME1 + PRIME2;
+        v2 = PRIME2;
+        v3 = 0;
+        v4 = -PRIME1;
+        total = 0;
+        pendingSize = 0;
+    }
+
+    private static long round(long acc, long input) {
+        return Long.rotateLeft(acc + input * PRIME2, 31) * PRIME1;
+    }
+
+    private static long merge(long acc, long value) {
+        return (acc ^ round(0, value)) * PRIME1 + PRIME4;
+    }
+
+    @Override
+    public void update(ByteBuffer buffer) {
+        int i = buffer.position();
+        int limit = buffer.limit();
+        total += limit - i;
+
+        if (pendingSize > 0) {
+            while (pendingSize < STRIPE && i < limit) {
+                pending[pendingSize++] = buffer.get(i++);
+            }
+            if (pendingSize < STRIPE) {
+                buffer.position(limit);
+                return;
+            }
+            v1 = round(v1, (long) ARRAY_LONGS.get(pending, 0));
+            v2 = round(v2, (long) ARRAY_LONGS.get(pending, 8));
+            v3 = round(v3, (long) ARRAY_LONGS.get(pending, 16));
+            v4 = round(v4, (long) ARRAY_LONGS.get(pending, 24));
+            pendingSize = 0;
+        }
+
+        long a = v1, b = v2, c = v3, d = v4;
+        for (; i + STRIPE <= limit; i += STRIPE) {
+            a = round(a, (long) LONGS.get(buffer, i));
+            b = round(b, (long) LONGS.get(buffer, i + 8));
+            c = round(c, (long) LONGS.get(buffer, i + 16));
+            d = round(d, (long) LONGS.get(buffer, i + 24));
+        }
+        v1 = a;
+        v2 = b;
+        v3 = c;
+        v4 = d;
+
+        while (i < limit) {
+            pending[pendingSize++] = buffer.get(i++);
+        }
+        buffer.position(limit);
+    }
+
+    @Override
+    public void digest(byte[] digest) {
+        long h;
+        if (total >= STRIPE) {
+            h = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            h = merge(h, v1);
+            h = merge(h, v2);
+            h = merge(h, v3);
+            h = merge(h, v4);
+        } else {
+            h = PRIME5;
+        }
+        h += total;
+
+        int i = 0;
+        for (; i + Long.BYTES <= pendingSize; i += Long.BYTES) {
+            h ^= round(0, (long) ARRAY_LONGS.get(pending, i));
+            h = Long.rotateLeft(h, 27) * PRIME1 + PRIME4;
+        }
+        if (i + Integer.BYTES <= pendingSize) {
+            h ^= ((int) ARRAY_INTS.get(pending, i) & 0xFFFFFFFFL) * PRIME1;
+            h = Long.rotateLeft(h, 23) * PRIME2 + PRIME3;
+            i += Integer.BYTES;
+        }
+        for (; i < pendingSize; i++) {
+            h ^= (pending[i] & 0xFF) * PRIME5;
+            h = Long.rotateLeft(h, 11) * PRIME1;
+        }
+
+        h ^= h >>> 33;
+        h *= PRIME2;
+        h ^= h >>> 29;
+        h *= PRIME3;
+        h ^= h >>> 32;
+
+        for (int j = 0; j < Long.BYTES; j++) {
+            digest[j] = (byte) (h >>> (56 - 8 * j));
+        }
+    }
+}
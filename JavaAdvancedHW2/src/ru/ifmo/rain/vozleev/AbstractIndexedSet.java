@@ -0,0 +1,215 @@
+package ru.ifmo.rain.vozleev;
+
+import java.util.*;
+
+/**
+ * Navigation of an immutable sorted set whose elements are addressed by index.
+ * <p>
+ * Elements are stored sorted by {@code comparator} at indices of some backing storage. A set is the range
+ * {@code [from, to)} of it in ascending or descending order, views share the storage and only narrow the range
+ * or flip the direction. Implementations provide access to an element by index and views over their storage,
+ * and may replace {@link #search} with a faster one.
+ */
+abstract class AbstractIndexedSet<T> extends AbstractSet<T> implements NavigableSet<T> {
+
+    final Comparator<? super T> comparator;
+    final int from;
+    final int to;
+    final boolean descending;
+
+    AbstractIndexedSet(Comparator<? super T> comparator, int from, int to, boolean descending) {
+        this.comparator = comparator;
+        this.from = from;
+        this.to = to;
+        this.descending = descending;
+    }
+
+    /**
+     * Returns the element at {@code index} of the backing storage.
+     */
+    abstract T element(int index);
+
+    /**
+     * Returns the set of elements at {@code [from, to)} of the same storage in the given direction.
+     */
+    abstract AbstractIndexedSet<T> view(int from, int to, boolean descending);
+
+    @SuppressWarnings("unchecked")
+    int compare(T a, T b) {
+        return comparator == null ? ((Comparable<? super T>) a).compareTo(b) : comparator.compare(a, b);
+    }
+
+    // Compares the element at index with key, implementations may do it without creating the element
+    int compareAt(int index, T key) {
+        return compare(element(index), key);
+    }
+
+    // Index of element, or ~insertion point if this set doesn't contain it, both in [from, to]
+    int search(T element) {
+        int low = from;
+        int high = to - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int cmp = compareAt(middle, element);
+            if (cmp < 0) {
+                low = middle + 1;
+            } else if (cmp > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return ~low;
+    }
+
+    // Index of the greatest element below (upper) or the least element above (!upper) element,
+    // equal one counts if inclusive. Goes out of [from, to) if there is no such element
+    int bin(T element, boolean upper, boolean inclusive) {
+        int pos = search(element);
+        if (pos < 0) {
+            pos = ~pos - (upper ? 1 : 0);
+        } else if (!inclusive) {
+            pos += (upper ? -1 : 1);
+        }
+        return pos;
+    }
+
+    T at(int index) {
+        return from <= index && index < to ? element(index) : null;
+    }
+
+    private AbstractIndexedSet<T> view(int fromIndex, int toIndex) {
+        return view(fromIndex, Math.max(fromIndex, toIndex), descending);
+    }
+
+    private void checkNonEmpty() {
+        if (from == to) {
+            throw new NoSuchElementException();
+        }
+    }
+
+    @Override
+    public int size() {
+        return to - from;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return new IndexIterator(descending);
+    }
+
+    @Override
+    public Iterator<T> descendingIterator() {
+        return new IndexIterator(!descending);
+    }
+
+    private class IndexIterator implements Iterator<T> {
+        private final boolean backward;
+        private int next;
+
+        private IndexIterator(boolean backward) {
+            this.backward = backward;
+            next = backward ? to - 1 : from;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return backward ? next >= from : next < to;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return element(backward ? next-- : next++);
+        }
+    }
+
+    @Override
+    public Comparator<? super T> comparator() {
+        return descending ? Collections.reverseOrder(comparator) : comparator;
+    }
+
+    @Override
+    public T first() {
+        checkNonEmpty();
+        return element(descending ? to - 1 : from);
+    }
+
+    @Override
+    public T last() {
+        checkNonEmpty();
+        return element(descending ? from : to - 1);
+    }
+
+    @Override
+    public T lower(T element) {
+        return at(bin(element, !descending, false));
+    }
+
+    @Override
+    public T floor(T element) {
+        return at(bin(element, !descending, true));
+    }
+
+    @Override
+    public T ceiling(T element) {
+        return at(bin(element, descending, true));
+    }
+
+    @Override
+    public T higher(T element) {
+        return at(bin(element, descending, false));
+    }
+
+    @Override
+    public T pollFirst() {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " is immutable");
+    }
+
+    @Override
+    public T pollLast() {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " is immutable");
+    }
+
+    @Override
+    public NavigableSet<T> descendingSet() {
+        return view(from, to, !descending);
+    }
+
+    @Override
+    public NavigableSet<T> subSet(T fromElement, boolean fromInclusive, T toElement, boolean toInclusive) {
+        if ((descending ? -1 : 1) * compare(fromElement, toElement) > 0) {
+            throw new IllegalArgumentException("fromElement > toElement");
+        }
+        return descending
+                ? view(bin(toElement, false, toInclusive), bin(fromElement, true, fromInclusive) + 1)
+                : view(bin(fromElement, false, fromInclusive), bin(toElement, true, toInclusive) + 1);
+    }
+
+    @Override
+    public NavigableSet<T> headSet(T toElement, boolean inclusive) {
+        return descending ? view(bin(toElement, false, inclusive), to) : view(from, bin(toElement, true, inclusive) + 1);
+    }
+
+    @Override
+    public NavigableSet<T> tailSet(T fromElement, boolean inclusive) {
+        return descending ? view(from, bin(fromElement, true, inclusive) + 1) : view(bin(fromElement, false, inclusive), to);
+    }
+
+    @Override
+    public SortedSet<T> subSet(T fromElement, T toElement) {
+        return subSet(fromElement, true, toElement, false);
+    }
+
+    @Override
+    public SortedSet<T> headSet(T toElement) {
+        return headSet(toElement, false);
+    }
+
+    @Override
+    public SortedSet<T> tailSet(T fromElement) {
+        return tailSet(fromElement, true);
+    }
+}
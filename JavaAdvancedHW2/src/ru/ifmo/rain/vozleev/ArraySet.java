@@ -1,15 +1,24 @@
 package ru.ifmo.rain.vozleev;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
 
-public class ArraySet<T> extends AbstractSet<T> implements SortedSet<T> {
+public class ArraySet<T> extends AbstractIndexedSet<T> {
 
-    private final List<T> data;
-    private final Comparator<? super T> comparator;
+    private static final int PARALLEL_SORT_THRESHOLD = 1 << 16;
+    private static final int PARALLEL_MERGE_THRESHOLD = 1 << 20;
+    private static final int GALLOP_RATIO = 8;
+
+    // Views share elements with their parent and only narrow [from, to) or flip the direction,
+    // elements are always sorted by comparator
+    private final Object[] elements;
+    // Optional copy of elements in search tree order used by search, shared by views
+    private final TreeLayout layout;
 
     public ArraySet() {
-        comparator = null;
-        data = Collections.emptyList();
+        this(Collections.emptyList(), null);
     }
 
     public ArraySet(Collection<? extends T> other) {
@@ -17,84 +26,402 @@ public class ArraySet<T> extends AbstractSet<T> implements SortedSet<T> {
     }
 
     public ArraySet(Comparator<? super T> comparator) {
-        this.comparator = comparator;
-        data = Collections.emptyList();
+        this(Collections.emptyList(), comparator);
     }
 
     public ArraySet(Collection<? extends T> other, Comparator<? super T> comparator) {
-        this.comparator  = comparator;
-        Set<T> tmpSet = new TreeSet<>(this.comparator);
-        tmpSet.addAll(other);
-        data = new ArrayList<>(tmpSet);
+        this(sorted(other, comparator), comparator);
     }
 
-    @Override
-    public Iterator<T> iterator() {
-        return Collections.unmodifiableList(data).iterator();
+    private ArraySet(Object[] elements, Comparator<? super T> comparator) {
+        this(elements, 0, elements.length, comparator, false, null);
     }
 
-    @Override
-    public int size() {
-        return data.size();
+    private ArraySet(Object[] elements, int from, int to, Comparator<? super T> comparator, boolean descending, TreeLayout layout) {
+        super(comparator, from, to, descending);
+        this.elements = elements;
+        this.layout = layout;
     }
 
-    @Override
-    public Comparator<? super T> comparator() {
-        return comparator;
+    @SuppressWarnings("unchecked")
+    private static <T> Object[] sorted(Collection<? extends T> other, Comparator<? super T> comparator) {
+        Object[] elements = other.toArray();
+        if (other instanceof SortedSet && Objects.equals(((SortedSet<?>) other).comparator(), comparator)) {
+            return elements;
+        }
+
+        if (elements.length >= PARALLEL_SORT_THRESHOLD) {
+            Arrays.parallelSort((T[]) elements, comparator);
+        } else {
+            Arrays.sort((T[]) elements, comparator);
+        }
+        // Sort is stable, so the first of equal elements is kept, as TreeSet.addAll does
+        Comparator<? super T> order = comparator != null ? comparator : (a, b) -> ((Comparable<? super T>) a).compareTo(b);
+        int size = Math.min(elements.length, 1);
+        for (int i = 1; i < elements.length; i++) {
+            if (order.compare((T) elements[size - 1], (T) elements[i]) != 0) {
+                elements[size++] = elements[i];
+            }
+        }
+        return size == elements.length ? elements : Arrays.copyOf(elements, size);
     }
 
-    @Override
-    public SortedSet<T> subSet(T fromElement, T toElement) {
-        return headSet(toElement).tailSet(fromElement);
+    // Elements of [from, to) as an implicit B-tree of nodes of NODE keys, node k holds keys[k * NODE, (k + 1) * NODE)
+    // in order and its children are nodes k * (NODE + 1) + 1 ... k * (NODE + 1) + NODE + 1. Keys of a node share
+    // one or two cache lines, so a search touches about log(n) / log(NODE + 1) lines of keys instead of log(n).
+    // The last node is padded with PAD, which is never an element, so null elements are searched as any other
+    private static class TreeLayout {
+        private static final int NODE = 16;
+        private static final Object PAD = new Object();
+
+        private final Object[] keys;
+        private final int[] positions;
+        private final int nodes;
+        private final int to;
+
+        private TreeLayout(Object[] elements, int from, int to) {
+            this.nodes = (to - from + NODE - 1) / NODE;
+            this.keys = new Object[nodes * NODE];
+            this.positions = new int[nodes * NODE];
+            this.to = to;
+            Arrays.fill(keys, PAD);
+            fill(elements, from, to, 0);
+        }
+
+        private int fill(Object[] elements, int next, int to, int node) {
+            if (node < nodes) {
+                for (int i = 0; i < NODE; i++) {
+                    next = fill(elements, next, to, node * (NODE + 1) + i + 1);
+                    if (next < to) {
+                        keys[node * NODE + i] = elements[next];
+                        positions[node * NODE + i] = next++;
+                    }
+                }
+                next = fill(elements, next, to, node * (NODE + 1) + NODE + 1);
+            }
+            return next;
+        }
     }
 
-    @Override
-    public SortedSet<T> headSet(T toElement) {
-        return new ArraySet<>(data.subList(0, bin(toElement, true, false) + 1), comparator);
+    /**
+     * Returns this set with an additional copy of its elements laid out as an implicit B-tree, which makes
+     * {@link #contains} and navigation on sets that don't fit in cache touch fewer cache lines than binary search
+     * over the sorted array. Views of the returned set use the same copy. Iteration still goes over the sorted array.
+     */
+    public ArraySet<T> withTreeLayout() {
+        return new ArraySet<>(elements, from, to, comparator, descending, new TreeLayout(elements, from, to));
     }
 
     @Override
-    public SortedSet<T> tailSet(T fromElement) {
-        return new ArraySet<>(data.subList(bin(fromElement, false, true), data.size()), comparator);
+    public Spliterator<T> spliterator() {
+        return new ArraySpliterator(0, size());
     }
 
-    @Override
-    public T first() {
-        checkNonEmpty();
-        return data.get(0);
+    // Covers positions [index, end) in the order of this set
+    private class ArraySpliterator implements Spliterator<T> {
+        private int index;
+        private final int end;
+
+        private ArraySpliterator(int index, int end) {
+            this.index = index;
+            this.end = end;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            Objects.requireNonNull(action);
+            if (index >= end) {
+                return false;
+            }
+            action.accept(get(index++));
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super T> action) {
+            Objects.requireNonNull(action);
+            if (descending) {
+                for (int i = to - 1 - index, last = to - end; i >= last; i--) {
+                    action.accept(element(i));
+                }
+            } else {
+                for (int i = from + index, last = from + end; i < last; i++) {
+                    action.accept(element(i));
+                }
+            }
+            index = end;
+        }
+
+        @Override
+        public Spliterator<T> trySplit() {
+            int middle = (index + end) >>> 1;
+            if (middle <= index) {
+                return null;
+            }
+            Spliterator<T> prefix = new ArraySpliterator(index, middle);
+            index = middle;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return end - index;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SORTED | DISTINCT | SIZED | SUBSIZED | IMMUTABLE;
+        }
+
+        @Override
+        public Comparator<? super T> getComparator() {
+            return comparator();
+        }
     }
 
-    @Override
-    public T last() {
-        checkNonEmpty();
-        return data.get(data.size() - 1);
+    /**
+     * Returns the {@code index}-th element in the order of this set.
+     *
+     * @throws IndexOutOfBoundsException if {@code index} is not in {@code [0, size())}
+     */
+    public T get(int index) {
+        Objects.checkIndex(index, size());
+        return element(descending ? to - 1 - index : from + index);
+    }
+
+    /**
+     * Returns position of {@code o} in the order of this set, or {@code -1} if the set doesn't contain it.
+     */
+    @SuppressWarnings("unchecked")
+    public int indexOf(Object o) {
+        int pos;
+        try {
+            pos = search((T) o);
+        } catch (ClassCastException e) {
+            return -1;
+        }
+        return pos < 0 ? -1 : descending ? to - 1 - pos : pos - from;
+    }
+
+    /**
+     * Returns the number of elements preceding {@code element} in the order of this set.
+     */
+    public int rank(T element) {
+        return descending ? to - bin(element, true, true) - 1 : bin(element, false, true) - from;
+    }
+
+    /**
+     * Returns {@code subSet(fromElement, fromInclusive, toElement, toInclusive).size()} without creating the view.
+     */
+    public int countInRange(T fromElement, boolean fromInclusive, T toElement, boolean toInclusive) {
+        if ((descending ? -1 : 1) * compare(fromElement, toElement) > 0) {
+            throw new IllegalArgumentException("fromElement > toElement");
+        }
+        int count = descending
+                ? bin(fromElement, true, fromInclusive) + 1 - bin(toElement, false, toInclusive)
+                : bin(toElement, true, toInclusive) + 1 - bin(fromElement, false, fromInclusive);
+        return Math.max(count, 0);
+    }
+
+    /**
+     * Returns set of elements of this set and {@code other} ordered as this set.
+     * Of equal elements the one from this set is kept.
+     */
+    public ArraySet<T> union(ArraySet<? extends T> other) {
+        return merge(other, Operation.UNION);
+    }
+
+    /**
+     * Returns set of elements of this set that {@code other} contains, ordered as this set.
+     */
+    public ArraySet<T> intersection(ArraySet<? extends T> other) {
+        return merge(other, Operation.INTERSECTION);
+    }
+
+    /**
+     * Returns set of elements of this set that {@code other} doesn't contain, ordered as this set.
+     */
+    public ArraySet<T> difference(ArraySet<? extends T> other) {
+        return merge(other, Operation.DIFFERENCE);
+    }
+
+    enum Operation {
+        UNION, INTERSECTION, DIFFERENCE;
+
+        private int capacity(int left, int right) {
+            return this == UNION ? left + right : this == INTERSECTION ? Math.min(left, right) : left;
+        }
+    }
+
+    // Merges backing arrays, which are both sorted by comparator, so direction of the sets doesn't matter.
+    // Large inputs are split by elements of the larger one into parts merged in parallel
+    private ArraySet<T> merge(ArraySet<? extends T> other, Operation operation) {
+        int parts = size() + other.size() < PARALLEL_MERGE_THRESHOLD ? 1 : ForkJoinPool.getCommonPoolParallelism();
+        return merge(other, operation, parts);
+    }
+
+    // Merges in the given number of independent parts, split at the same keys on both sides
+    ArraySet<T> merge(ArraySet<? extends T> other, Operation operation, int parts) {
+        ArraySet<? extends T> right = Objects.equals(comparator, other.comparator) ? other : new ArraySet<T>(other, comparator);
+        Object[] a = elements;
+        Object[] b = right.elements;
+        if (parts <= 1 || isEmpty() || right.isEmpty()) {
+            Object[] result = new Object[operation.capacity(size(), right.size())];
+            int size = merge(a, from, to, b, right.from, right.to, operation, result, 0);
+            return new ArraySet<>(size == result.length ? result : Arrays.copyOf(result, size), 0, size, comparator, descending, null);
+        }
+
+        boolean splitA = size() >= right.size();
+        int[] aBounds = new int[parts + 1];
+        int[] bBounds = new int[parts + 1];
+        aBounds[0] = from;
+        bBounds[0] = right.from;
+        for (int k = 1; k <= parts; k++) {
+            if (splitA) {
+                aBounds[k] = from + (int) ((long) size() * k / parts);
+                bBounds[k] = k == parts ? right.to : lowerBound(b, right.from, right.to, key(a, aBounds[k]));
+            } else {
+                bBounds[k] = right.from + (int) ((long) right.size() * k / parts);
+                aBounds[k] = k == parts ? to : lowerBound(a, from, to, key(b, bBounds[k]));
+            }
+        }
+        Object[][] results = new Object[parts][];
+        int[] sizes = new int[parts];
+        IntStream.range(0, parts).parallel().forEach(k -> {
+            results[k] = new Object[operation.capacity(aBounds[k + 1] - aBounds[k], bBounds[k + 1] - bBounds[k])];
+            sizes[k] = merge(a, aBounds[k], aBounds[k + 1], b, bBounds[k], bBounds[k + 1], operation, results[k], 0);
+        });
+        Object[] result = new Object[Arrays.stream(sizes).sum()];
+        for (int k = 0, size = 0; k < parts; size += sizes[k], k++) {
+            System.arraycopy(results[k], 0, result, size, sizes[k]);
+        }
+        return new ArraySet<>(result, 0, result.length, comparator, descending, null);
+    }
+
+    // Linear merge of a[i, aEnd) and b[j, bEnd) into out from size, returns the new size.
+    // If one side is much shorter, runs of the other one are skipped by galloping
+    private int merge(Object[] a, int i, int aEnd, Object[] b, int j, int bEnd, Operation operation, Object[] out, int size) {
+        boolean gallop = (long) Math.min(aEnd - i, bEnd - j) * GALLOP_RATIO < Math.max(aEnd - i, bEnd - j);
+        while (i < aEnd && j < bEnd) {
+            int cmp = compare(key(a, i), key(b, j));
+            if (cmp < 0) {
+                int k = gallop ? gallop(a, i + 1, aEnd, key(b, j)) : i + 1;
+                if (operation != Operation.INTERSECTION) {
+                    System.arraycopy(a, i, out, size, k - i);
+                    size += k - i;
+                }
+                i = k;
+            } else if (cmp > 0) {
+                int k = gallop ? gallop(b, j + 1, bEnd, key(a, i)) : j + 1;
+                if (operation == Operation.UNION) {
+                    System.arraycopy(b, j, out, size, k - j);
+                    size += k - j;
+                }
+                j = k;
+            } else {
+                if (operation != Operation.DIFFERENCE) {
+                    out[size++] = a[i];
+                }
+                i++;
+                j++;
+            }
+        }
+        if (operation != Operation.INTERSECTION) {
+            System.arraycopy(a, i, out, size, aEnd - i);
+            size += aEnd - i;
+        }
+        if (operation == Operation.UNION) {
+            System.arraycopy(b, j, out, size, bEnd - j);
+            size += bEnd - j;
+        }
+        return size;
+    }
+
+    // First index in [low, high) whose element is not less than key, probing low, low + 1, low + 3, low + 7...
+    private int gallop(Object[] array, int low, int high, T key) {
+        int step = 1;
+        int probe = low;
+        while (probe < high && compare(key(array, probe), key) < 0) {
+            low = probe + 1;
+            probe = low + step;
+            step <<= 1;
+        }
+        return lowerBound(array, low, Math.min(probe, high), key);
+    }
+
+    // First index in [low, high) whose element is not less than key
+    private int lowerBound(Object[] array, int low, int high, T key) {
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (compare(key(array, middle), key) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
     }
 
     @Override
     @SuppressWarnings("unchecked")
     public boolean contains(Object o) {
         try {
-            return Collections.binarySearch(this.data, (T) o, this.comparator()) >= 0;
+            return search((T) o) >= 0;
         } catch (ClassCastException e) {
             System.err.println("ERROR! (In method contains) argument has unexpected type");
             return false;
         }
     }
 
-    private void checkNonEmpty() {
-        if (data.isEmpty()) {
-            throw new NoSuchElementException();
-        }
+    @Override
+    ArraySet<T> view(int from, int to, boolean descending) {
+        return new ArraySet<>(elements, from, to, comparator, descending, layout);
     }
 
-    private int bin(T element, boolean to, boolean inclusive) {
+    @Override
+    @SuppressWarnings("unchecked")
+    T element(int index) {
+        return (T) elements[index];
+    }
+
+    @SuppressWarnings("unchecked")
+    private T key(Object[] array, int index) {
+        return (T) array[index];
+    }
 
-        int pos = Collections.binarySearch(data, element, comparator);
-        if (pos < 0) {
-            pos = ~pos - (to ? 1 : 0);
-        } else if (!inclusive) {
-            pos += (to ? -1 : 1);
+    @Override
+    int search(T element) {
+        return layout != null ? searchTree(element) : super.search(element);
+    }
+
+    // Lower bound of element over the whole tree, then clamped to this view
+    @SuppressWarnings("unchecked")
+    private int searchTree(T element) {
+        Object[] keys = layout.keys;
+        Object candidate = null;
+        int position = layout.to;
+        for (int node = 0; node < layout.nodes; ) {
+            int low = node * TreeLayout.NODE;
+            int high = low + TreeLayout.NODE;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (keys[middle] != TreeLayout.PAD && compare(key(keys, middle), element) < 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            int index = low - node * TreeLayout.NODE;
+            if (index < TreeLayout.NODE && keys[low] != TreeLayout.PAD) {
+                candidate = keys[low];
+                position = layout.positions[low];
+            }
+            node = node * (TreeLayout.NODE + 1) + index + 1;
+        }
+        int pos = Math.min(Math.max(position, from), to);
+        if (pos < to && compare(pos == position ? (T) candidate : element(pos), element) == 0) {
+            return pos;
         }
-        return pos;
+        return ~pos;
     }
 }
@@ -0,0 +1,84 @@
+package ru.ifmo.rain.vozleev;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Checks the parallel path of {@link ArraySet} set algebra by forcing several merge parts.
+ */
+public class ArraySetMergeTest {
+    private static final Random RANDOM = new Random(3425372465923754L);
+    private static final int[] PARTS = {1, 2, 3, 4, 7, 16};
+
+    @Test
+    public void test01_leadingElementsOfSmallerSide() {
+        // Every element of the smaller side is below the first split key of the larger one
+        check(range(1000, 100000, 2), range(0, 10, 1));
+        check(range(0, 10, 1), range(1000, 100000, 2));
+    }
+
+    @Test
+    public void test02_trailingElementsOfSmallerSide() {
+        check(range(0, 100000, 2), range(200000, 200010, 1));
+        check(range(200000, 200010, 1), range(0, 100000, 2));
+    }
+
+    @Test
+    public void test03_moreParts() {
+        check(range(0, 3, 1), range(0, 5, 1));
+        check(range(5, 6, 1), range(0, 3, 1));
+    }
+
+    @Test
+    public void test04_random() {
+        for (int i = 0; i < 50; i++) {
+            check(random(RANDOM.nextInt(5000)), random(RANDOM.nextInt(5000)));
+        }
+    }
+
+    @Test
+    public void test05_comparator() {
+        Comparator<Integer> reversed = Comparator.reverseOrder();
+        for (int i = 0; i < 20; i++) {
+            List<Integer> a = random(RANDOM.nextInt(3000));
+            List<Integer> b = random(RANDOM.nextInt(3000));
+            for (int parts : PARTS) {
+                check(new ArraySet<>(a, reversed), new ArraySet<>(b, reversed), new TreeSet<>(a), new TreeSet<>(b), reversed, parts);
+            }
+        }
+    }
+
+    private static void check(List<Integer> a, List<Integer> b) {
+        for (int parts : PARTS) {
+            check(new ArraySet<>(a), new ArraySet<>(b), new TreeSet<>(a), new TreeSet<>(b), null, parts);
+        }
+    }
+
+    private static void check(ArraySet<Integer> a, ArraySet<Integer> b, Set<Integer> expectedA, Set<Integer> expectedB,
+                              Comparator<Integer> comparator, int parts) {
+        expect(a.merge(b, ArraySet.Operation.UNION, parts), comparator, parts, "union", expectedA, expectedB, Set::addAll);
+        expect(a.merge(b, ArraySet.Operation.INTERSECTION, parts), comparator, parts, "intersection", expectedA, expectedB, Set::retainAll);
+        expect(a.merge(b, ArraySet.Operation.DIFFERENCE, parts), comparator, parts, "difference", expectedA, expectedB, Set::removeAll);
+    }
+
+    private static void expect(ArraySet<Integer> actual, Comparator<Integer> comparator, int parts, String operation,
+                               Set<Integer> a, Set<Integer> b, BiConsumer<Set<Integer>, Set<Integer>> expected) {
+        TreeSet<Integer> result = new TreeSet<>(comparator);
+        result.addAll(a);
+        expected.accept(result, b);
+        Assert.assertEquals(operation + " in " + parts + " parts", new ArrayList<>(result), new ArrayList<>(actual));
+    }
+
+    private static List<Integer> range(int from, int to, int step) {
+        return IntStream.iterate(from, i -> i < to, i -> i + step).boxed().collect(Collectors.toList());
+    }
+
+    private static List<Integer> random(int size) {
+        return RANDOM.ints(size, 0, size * 2 + 1).boxed().collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,87 @@
+package ru.ifmo.rain.vozleev;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.*;
+
+/**
+ * Checks searches of {@link ArraySet#withTreeLayout()} against {@link TreeSet}.
+ */
+public class ArraySetTreeLayoutTest {
+    private static final Random RANDOM = new Random(7412930561283475L);
+    private static final int[] SIZES = {0, 1, 15, 16, 17, 100, 272, 273, 5000};
+
+    @Test
+    public void test01_naturalOrder() {
+        for (int size : SIZES) {
+            check(random(size), null);
+        }
+    }
+
+    @Test
+    public void test02_nullElement() {
+        // Padding of the last node must not be mistaken for a null element
+        Comparator<Integer> nullsFirst = Comparator.nullsFirst(Comparator.naturalOrder());
+        Comparator<Integer> nullsLast = Comparator.nullsLast(Comparator.naturalOrder());
+        for (int size : SIZES) {
+            List<Integer> elements = random(size);
+            elements.add(null);
+            check(elements, nullsFirst);
+            check(elements, nullsLast);
+        }
+    }
+
+    @Test
+    public void test03_views() {
+        Comparator<Integer> nullsLast = Comparator.nullsLast(Comparator.naturalOrder());
+        List<Integer> elements = random(1000);
+        elements.add(null);
+        ArraySet<Integer> set = new ArraySet<>(elements, nullsLast).withTreeLayout();
+        TreeSet<Integer> expected = new TreeSet<>(nullsLast);
+        expected.addAll(elements);
+        for (int i = 0; i < 100; i++) {
+            Integer bound = probe();
+            check(set.tailSet(bound, true), expected.tailSet(bound, true));
+            check(set.headSet(bound, false), expected.headSet(bound, false));
+            check(set.descendingSet().headSet(bound, true), expected.descendingSet().headSet(bound, true));
+        }
+    }
+
+    private static void check(List<Integer> elements, Comparator<Integer> comparator) {
+        TreeSet<Integer> expected = new TreeSet<>(comparator);
+        expected.addAll(elements);
+        check(new ArraySet<>(elements, comparator).withTreeLayout(), expected);
+    }
+
+    private static void check(NavigableSet<Integer> actual, NavigableSet<Integer> expected) {
+        Assert.assertEquals(new ArrayList<>(expected), new ArrayList<>(actual));
+        List<Integer> probes = new ArrayList<>(expected);
+        for (int i = 0; i < 100; i++) {
+            probes.add(probe());
+        }
+        if (expected.comparator() != null) {
+            probes.add(null);
+        }
+        for (Integer probe : probes) {
+            String message = "probe " + probe;
+            Assert.assertEquals(message, expected.contains(probe), actual.contains(probe));
+            Assert.assertEquals(message, expected.lower(probe), actual.lower(probe));
+            Assert.assertEquals(message, expected.floor(probe), actual.floor(probe));
+            Assert.assertEquals(message, expected.ceiling(probe), actual.ceiling(probe));
+            Assert.assertEquals(message, expected.higher(probe), actual.higher(probe));
+        }
+    }
+
+    private static Integer probe() {
+        return RANDOM.nextInt(20000) - 10000;
+    }
+
+    private static List<Integer> random(int size) {
+        List<Integer> elements = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            elements.add(RANDOM.nextInt(20000) - 10000);
+        }
+        return elements;
+    }
+}
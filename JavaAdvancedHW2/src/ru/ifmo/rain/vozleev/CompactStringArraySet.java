@@ -0,0 +1,319 @@
+package ru.ifmo.rain.vozleev;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Immutable sorted set of strings stored as front-coded UTF-8.
+ * <p>
+ * Keys are split into blocks of {@code BLOCK} keys. The first key of a block is stored whole and every other key
+ * as {@code shared, suffix length, suffix} relative to the previous one, lengths are varints. Offsets of blocks
+ * form the index that is binary searched by the first keys. Lookups compare raw bytes and never create strings,
+ * iteration decodes keys one by one.
+ * <p>
+ * Strings are ordered by code points, which is the order of their UTF-8 bytes. It differs from
+ * {@link String#compareTo} only for supplementary characters compared with characters {@code U+E000..U+FFFF}.
+ * Views share the data of their parent and keep {@code [from, to)} bounds and direction, like {@link ArraySet}.
+ * <p>
+ * Strings with unpaired surrogates have no UTF-8 form: the constructor and navigation methods reject them
+ * with {@link IllegalArgumentException}, and {@link #contains} reports them as absent.
+ */
+public class CompactStringArraySet extends AbstractIndexedSet<String> {
+
+    private static final int BLOCK = 16;
+    private static final Comparator<String> CODE_POINT_ORDER = (a, b) -> {
+        for (int i = 0, j = 0; i < a.length() && j < b.length(); ) {
+            int x = a.codePointAt(i);
+            int y = b.codePointAt(j);
+            if (x != y) {
+                return Integer.compare(x, y);
+            }
+            i += Character.charCount(x);
+            j += Character.charCount(y);
+        }
+        return Integer.compare(a.codePointCount(0, a.length()), b.codePointCount(0, b.length()));
+    };
+
+    private static final ThreadLocal<CharsetEncoder> ENCODER = ThreadLocal.withInitial(() -> StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPORT)
+            .onUnmappableCharacter(CodingErrorAction.REPORT));
+
+    private final byte[] data;
+    private final int[] blocks;
+    private final int size;
+
+    public CompactStringArraySet() {
+        this(Collections.emptyList());
+    }
+
+    public CompactStringArraySet(Collection<? extends String> other) {
+        this(sorted(other));
+    }
+
+    private CompactStringArraySet(byte[][] keys) {
+        super(CODE_POINT_ORDER, 0, keys.length, false);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        blocks = new int[(keys.length + BLOCK - 1) / BLOCK];
+        for (int i = 0; i < keys.length; i++) {
+            int shared = 0;
+            if (i % BLOCK == 0) {
+                blocks[i / BLOCK] = out.size();
+            } else {
+                shared = Arrays.mismatch(keys[i - 1], keys[i]);
+                writeVarInt(out, shared);
+            }
+            writeVarInt(out, keys[i].length - shared);
+            out.write(keys[i], shared, keys[i].length - shared);
+        }
+        data = out.toByteArray();
+        size = keys.length;
+    }
+
+    private CompactStringArraySet(CompactStringArraySet parent, int from, int to, boolean descending) {
+        super(CODE_POINT_ORDER, from, to, descending);
+        this.data = parent.data;
+        this.blocks = parent.blocks;
+        this.size = parent.size;
+    }
+
+    // Distinct UTF-8 forms of strings in unsigned order
+    private static byte[][] sorted(Collection<? extends String> other) {
+        byte[][] keys = new byte[other.size()][];
+        int count = 0;
+        for (String key : other) {
+            keys[count] = encode(key);
+            if (keys[count++] == null) {
+                throw new IllegalArgumentException("String has unpaired surrogates: " + key);
+            }
+        }
+        Arrays.sort(keys, Arrays::compareUnsigned);
+        int distinct = Math.min(count, 1);
+        for (int i = 1; i < count; i++) {
+            if (!Arrays.equals(keys[distinct - 1], keys[i])) {
+                keys[distinct++] = keys[i];
+            }
+        }
+        return Arrays.copyOf(keys, distinct);
+    }
+
+    private static void writeVarInt(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7f) != 0) {
+            out.write(value & 0x7f | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    // Reads entries one by one starting from the beginning of a block, position points past the last read entry
+    private final class Cursor {
+        private int position;
+        private int shared;
+        private int suffix;
+        private int length;
+
+        private Cursor(int block) {
+            position = blocks[block];
+        }
+
+        private void next(boolean first) {
+            shared = first ? 0 : readVarInt();
+            length = readVarInt();
+            suffix = position;
+            position += length;
+        }
+
+        private int readVarInt() {
+            int value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = data[position++];
+                value |= (b & 0x7f) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+        }
+    }
+
+    // Index of key among all keys, or ~insertion point if it is absent
+    private int search(byte[] key) {
+        int low = 0;
+        int high = blocks.length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            Cursor cursor = new Cursor(middle);
+            cursor.next(true);
+            if (Arrays.compareUnsigned(data, cursor.suffix, cursor.suffix + cursor.length, key, 0, key.length) <= 0) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        if (high < 0) {
+            return ~0;
+        }
+
+        // Keeps the common prefix of the current key and key: a key sharing less with its predecessor than that
+        // is greater than key, sharing more it is still less, only an equal share needs a look at the suffix
+        Cursor cursor = new Cursor(high);
+        int matched = 0;
+        for (int index = high * BLOCK; index < Math.min(size, (high + 1) * BLOCK); index++) {
+            cursor.next(index == high * BLOCK);
+            if (cursor.shared < matched) {
+                return ~index;
+            } else if (cursor.shared > matched) {
+                continue;
+            }
+            int mismatch = Arrays.mismatch(data, cursor.suffix, cursor.suffix + cursor.length, key, matched, key.length);
+            if (mismatch == -1) {
+                return index;
+            }
+            if (mismatch < cursor.length && (matched + mismatch == key.length
+                    || Byte.toUnsignedInt(data[cursor.suffix + mismatch]) > Byte.toUnsignedInt(key[matched + mismatch]))) {
+                return ~index;
+            }
+            matched += mismatch;
+        }
+        return ~Math.min(size, (high + 1) * BLOCK);
+    }
+
+    // Reads keys in ascending order starting from index
+    private final class Decoder {
+        private Cursor cursor;
+        private int index;
+        private byte[] key = new byte[64];
+        private int length;
+
+        private Decoder(int index) {
+            this.index = index - index % BLOCK;
+            while (this.index < index) {
+                next();
+            }
+        }
+
+        private void next() {
+            if (index % BLOCK == 0) {
+                cursor = new Cursor(index / BLOCK);
+            }
+            cursor.next(index % BLOCK == 0);
+            length = cursor.shared + cursor.length;
+            if (key.length < length) {
+                key = Arrays.copyOf(key, Math.max(length, 2 * key.length));
+            }
+            System.arraycopy(data, cursor.suffix, key, cursor.shared, cursor.length);
+            index++;
+        }
+
+        private String decodeNext() {
+            next();
+            return new String(key, 0, length, StandardCharsets.UTF_8);
+        }
+    }
+
+    @Override
+    String element(int index) {
+        Decoder decoder = new Decoder(index);
+        return decoder.decodeNext();
+    }
+
+    @Override
+    CompactStringArraySet view(int from, int to, boolean descending) {
+        return new CompactStringArraySet(this, from, to, descending);
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+        return descending ? new BackwardIterator() : new ForwardIterator();
+    }
+
+    @Override
+    public Iterator<String> descendingIterator() {
+        return descending ? new ForwardIterator() : new BackwardIterator();
+    }
+
+    private class ForwardIterator implements Iterator<String> {
+        private final Decoder decoder = new Decoder(from);
+
+        @Override
+        public boolean hasNext() {
+            return decoder.index < to;
+        }
+
+        @Override
+        public String next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return decoder.decodeNext();
+        }
+    }
+
+    // Decodes a whole block when it enters one, since entries can only be decoded forwards
+    private class BackwardIterator implements Iterator<String> {
+        private final String[] block = new String[BLOCK];
+        private int next = to - 1;
+
+        @Override
+        public boolean hasNext() {
+            return next >= from;
+        }
+
+        @Override
+        public String next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            if (next == to - 1 || next % BLOCK == BLOCK - 1) {
+                Decoder decoder = new Decoder(Math.max(from, next - next % BLOCK));
+                for (int i = decoder.index; i <= next; i++) {
+                    block[i % BLOCK] = decoder.decodeNext();
+                }
+            }
+            return block[next-- % BLOCK];
+        }
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (!(o instanceof String)) {
+            return false;
+        }
+        byte[] key = encode((String) o);
+        return key != null && bounded(search(key)) >= 0;
+    }
+
+    // UTF-8 form of the string, null if it has unpaired surrogates
+    private static byte[] encode(String string) {
+        try {
+            ByteBuffer buffer = ENCODER.get().encode(CharBuffer.wrap(string));
+            return Arrays.copyOf(buffer.array(), buffer.limit());
+        } catch (CharacterCodingException e) {
+            return null;
+        }
+    }
+
+    @Override
+    int search(String element) {
+        byte[] key = encode(element);
+        if (key == null) {
+            throw new IllegalArgumentException("String has unpaired surrogates: " + element);
+        }
+        return bounded(search(key));
+    }
+
+    // Clamps a search result over all keys to this view
+    private int bounded(int pos) {
+        int index = pos < 0 ? ~pos : pos;
+        if (index < from) {
+            return ~from;
+        } else if (index >= to) {
+            return ~to;
+        }
+        return pos;
+    }
+}
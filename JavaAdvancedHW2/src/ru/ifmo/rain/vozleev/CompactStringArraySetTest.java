@@ -0,0 +1,101 @@
+package ru.ifmo.rain.vozleev;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.*;
+
+/**
+ * Checks {@link CompactStringArraySet} against {@link TreeSet} ordered by code points.
+ */
+public class CompactStringArraySetTest {
+    private static final Random RANDOM = new Random(1029384756473829L);
+    private static final String[] PARTS = {"", "a", "ab", "abc", "b", "/usr/", "/usr/lib/", "é", "", "￿", "😀", "z"};
+    private static final Comparator<String> CODE_POINTS = (a, b) -> Arrays.compare(a.codePoints().toArray(), b.codePoints().toArray());
+
+    @Test
+    public void test01_navigation() {
+        for (int size : new int[]{0, 1, 15, 16, 17, 100, 1000}) {
+            List<String> strings = strings(size);
+            TreeSet<String> expected = new TreeSet<>(CODE_POINTS);
+            expected.addAll(strings);
+            check(new CompactStringArraySet(strings), expected, strings(50));
+        }
+    }
+
+    @Test
+    public void test02_views() {
+        List<String> strings = strings(500);
+        TreeSet<String> expected = new TreeSet<>(CODE_POINTS);
+        expected.addAll(strings);
+        NavigableSet<String> set = new CompactStringArraySet(strings);
+        List<String> probes = strings(30);
+        for (int i = 0; i < 100; i++) {
+            String a = probes.get(RANDOM.nextInt(probes.size()));
+            String b = probes.get(RANDOM.nextInt(probes.size()));
+            String low = CODE_POINTS.compare(a, b) <= 0 ? a : b;
+            String high = low == a ? b : a;
+            boolean lowInclusive = RANDOM.nextBoolean();
+            boolean highInclusive = RANDOM.nextBoolean();
+            check(set.subSet(low, lowInclusive, high, highInclusive), expected.subSet(low, lowInclusive, high, highInclusive), probes);
+            check(set.descendingSet().headSet(low, lowInclusive), expected.descendingSet().headSet(low, lowInclusive), probes);
+            check(set.tailSet(high, highInclusive).descendingSet(), expected.tailSet(high, highInclusive).descendingSet(), probes);
+        }
+    }
+
+    @Test
+    public void test03_supplementaryOrder() {
+        // U+1F600 is greater than U+FFFF by code points, although its first surrogate is less as a char
+        NavigableSet<String> set = new CompactStringArraySet(Arrays.asList("￿", "😀", ""));
+        Assert.assertEquals(Arrays.asList("", "￿", "😀"), new ArrayList<>(set));
+        Assert.assertEquals("😀", set.higher("￿"));
+        Assert.assertEquals("￿", set.lower("😀"));
+    }
+
+    @Test
+    public void test04_unpairedSurrogates() {
+        NavigableSet<String> set = new CompactStringArraySet(Arrays.asList("a", "b"));
+        Assert.assertFalse(set.contains("\uD800"));
+        Assert.assertFalse(set.contains(42));
+        assertRejected(() -> new CompactStringArraySet(Arrays.asList("a", "x\uDC00")));
+        assertRejected(() -> set.ceiling("\uD800"));
+        assertRejected(() -> set.headSet("\uD800", true));
+    }
+
+    private static void check(NavigableSet<String> actual, NavigableSet<String> expected, List<String> probes) {
+        Assert.assertEquals(new ArrayList<>(expected), new ArrayList<>(actual));
+        Assert.assertEquals(new ArrayList<>(expected.descendingSet()), new ArrayList<>(actual.descendingSet()));
+        Assert.assertEquals(expected.size(), actual.size());
+        if (!expected.isEmpty()) {
+            Assert.assertEquals(expected.first(), actual.first());
+            Assert.assertEquals(expected.last(), actual.last());
+        }
+        for (String probe : probes) {
+            Assert.assertEquals(probe, expected.contains(probe), actual.contains(probe));
+            Assert.assertEquals(probe, expected.lower(probe), actual.lower(probe));
+            Assert.assertEquals(probe, expected.floor(probe), actual.floor(probe));
+            Assert.assertEquals(probe, expected.ceiling(probe), actual.ceiling(probe));
+            Assert.assertEquals(probe, expected.higher(probe), actual.higher(probe));
+        }
+    }
+
+    private static List<String> strings(int size) {
+        List<String> strings = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            StringBuilder string = new StringBuilder();
+            for (int j = RANDOM.nextInt(5); j > 0; j--) {
+                string.append(PARTS[RANDOM.nextInt(PARTS.length)]);
+            }
+            strings.add(string.toString());
+        }
+        return strings;
+    }
+
+    private static void assertRejected(Runnable action) {
+        try {
+            action.run();
+            Assert.fail("String with unpaired surrogates accepted");
+        } catch (IllegalArgumentException ignored) {
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package ru.ifmo.rain.vozleev;
+
+import java.util.*;
+
+/**
+ * Immutable sorted set of {@code int} values backed by a sorted {@code int[]}, stored values are not boxed.
+ * <p>
+ * Views share the array of their parent and keep {@code [from, to)} bounds and direction,
+ * so range and descending views are created in O(log n) and copy nothing.
+ * Boxed {@link NavigableSet} methods delegate to the primitive ones.
+ */
+public class IntArraySet extends AbstractSet<Integer> implements NavigableSet<Integer> {
+
+    private static final int PARALLEL_SORT_THRESHOLD = 1 << 16;
+
+    private final int[] elements;
+    private final int from;
+    private final int to;
+    private final boolean descending;
+
+    public IntArraySet() {
+        this(new int[0], 0, 0, false);
+    }
+
+    public IntArraySet(int... values) {
+        elements = distinct(values.clone());
+        from = 0;
+        to = elements.length;
+        descending = false;
+    }
+
+    public IntArraySet(Collection<? extends Integer> other) {
+        if (other instanceof IntArraySet && !((IntArraySet) other).descending) {
+            IntArraySet set = (IntArraySet) other;
+            elements = Arrays.copyOfRange(set.elements, set.from, set.to);
+        } else {
+            int[] values = new int[other.size()];
+            int size = 0;
+            for (Integer value : other) {
+                values[size++] = value;
+            }
+            elements = distinct(values);
+        }
+        from = 0;
+        to = elements.length;
+        descending = false;
+    }
+
+    private IntArraySet(int[] elements, int from, int to, boolean descending) {
+        this.elements = elements;
+        this.from = from;
+        this.to = to;
+        this.descending = descending;
+    }
+
+    private static int[] distinct(int[] values) {
+        if (values.length >= PARALLEL_SORT_THRESHOLD) {
+            Arrays.parallelSort(values);
+        } else {
+            Arrays.sort(values);
+        }
+        int size = Math.min(values.length, 1);
+        for (int i = 1; i < values.length; i++) {
+            if (values[size - 1] != values[i]) {
+                values[size++] = values[i];
+            }
+        }
+        return size == values.length ? values : Arrays.copyOf(values, size);
+    }
+
+    public boolean contains(int value) {
+        return Arrays.binarySearch(elements, from, to, value) >= 0;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof Integer && contains(((Integer) o).intValue());
+    }
+
+    /**
+     * Returns the number of elements preceding {@code value} in the order of this set.
+     */
+    public int rank(int value) {
+        return descending ? to - lowerIndex(value, true) - 1 : higherIndex(value, true) - from;
+    }
+
+    @Override
+    public int size() {
+        return to - from;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 0;
+        for (int i = from; i < to; i++) {
+            hash += Integer.hashCode(elements[i]);
+        }
+        return hash;
+    }
+
+    /**
+     * Returns the elements in the order of this set.
+     */
+    public int[] toIntArray() {
+        int[] values = Arrays.copyOfRange(elements, from, to);
+        if (descending) {
+            for (int i = 0, j = values.length - 1; i < j; i++, j--) {
+                int value = values[i];
+                values[i] = values[j];
+                values[j] = value;
+            }
+        }
+        return values;
+    }
+
+    @Override
+    public PrimitiveIterator.OfInt iterator() {
+        return new OfInt(descending);
+    }
+
+    @Override
+    public PrimitiveIterator.OfInt descendingIterator() {
+        return new OfInt(!descending);
+    }
+
+    private class OfInt implements PrimitiveIterator.OfInt {
+        private final boolean backward;
+        private int next;
+
+        private OfInt(boolean backward) {
+            this.backward = backward;
+            next = backward ? to - 1 : from;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return backward ? next >= from : next < to;
+        }
+
+        @Override
+        public int nextInt() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return elements[backward ? next-- : next++];
+        }
+    }
+
+    @Override
+    public Comparator<? super Integer> comparator() {
+        return descending ? Collections.reverseOrder() : null;
+    }
+
+    public int firstInt() {
+        checkNonEmpty();
+        return elements[descending ? to - 1 : from];
+    }
+
+    public int lastInt() {
+        checkNonEmpty();
+        return elements[descending ? from : to - 1];
+    }
+
+    @Override
+    public Integer first() {
+        return firstInt();
+    }
+
+    @Override
+    public Integer last() {
+        return lastInt();
+    }
+
+    @Override
+    public Integer lower(Integer value) {
+        return descending ? at(higherIndex(value, false)) : at(lowerIndex(value, false));
+    }
+
+    @Override
+    public Integer floor(Integer value) {
+        return descending ? at(higherIndex(value, true)) : at(lowerIndex(value, true));
+    }
+
+    @Override
+    public Integer ceiling(Integer value) {
+        return descending ? at(lowerIndex(value, true)) : at(higherIndex(value, true));
+    }
+
+    @Override
+    public Integer higher(Integer value) {
+        return descending ? at(lowerIndex(value, false)) : at(higherIndex(value, false));
+    }
+
+    @Override
+    public Integer pollFirst() {
+        throw new UnsupportedOperationException("IntArraySet is immutable");
+    }
+
+    @Override
+    public Integer pollLast() {
+        throw new UnsupportedOperationException("IntArraySet is immutable");
+    }
+
+    @Override
+    public IntArraySet descendingSet() {
+        return new IntArraySet(elements, from, to, !descending);
+    }
+
+    public IntArraySet subSet(int fromElement, boolean fromInclusive, int toElement, boolean toInclusive) {
+        if (descending ? fromElement < toElement : fromElement > toElement) {
+            throw new IllegalArgumentException("fromElement > toElement");
+        }
+        return descending
+                ? view(higherIndex(toElement, toInclusive), lowerIndex(fromElement, fromInclusive) + 1)
+                : view(higherIndex(fromElement, fromInclusive), lowerIndex(toElement, toInclusive) + 1);
+    }
+
+    public IntArraySet headSet(int toElement, boolean inclusive) {
+        return descending ? view(higherIndex(toElement, inclusive), to) : view(from, lowerIndex(toElement, inclusive) + 1);
+    }
+
+    public IntArraySet tailSet(int fromElement, boolean inclusive) {
+        return descending ? view(from, lowerIndex(fromElement, inclusive) + 1) : view(higherIndex(fromElement, inclusive), to);
+    }
+
+    @Override
+    public IntArraySet subSet(Integer fromElement, boolean fromInclusive, Integer toElement, boolean toInclusive) {
+        return subSet(fromElement.intValue(), fromInclusive, toElement.intValue(), toInclusive);
+    }
+
+    @Override
+    public IntArraySet headSet(Integer toElement, boolean inclusive) {
+        return headSet(toElement.intValue(), inclusive);
+    }
+
+    @Override
+    public IntArraySet tailSet(Integer fromElement, boolean inclusive) {
+        return tailSet(fromElement.intValue(), inclusive);
+    }
+
+    @Override
+    public IntArraySet subSet(Integer fromElement, Integer toElement) {
+        return subSet(fromElement, true, toElement, false);
+    }
+
+    @Override
+    public IntArraySet headSet(Integer toElement) {
+        return headSet(toElement, false);
+    }
+
+    @Override
+    public IntArraySet tailSet(Integer fromElement) {
+        return tailSet(fromElement, true);
+    }
+
+    private void checkNonEmpty() {
+        if (from == to) {
+            throw new NoSuchElementException();
+        }
+    }
+
+    private IntArraySet view(int fromIndex, int toIndex) {
+        return new IntArraySet(elements, fromIndex, Math.max(fromIndex, toIndex), descending);
+    }
+
+    private Integer at(int index) {
+        return from <= index && index < to ? elements[index] : null;
+    }
+
+    // Index of the greatest element less than value (or equal if inclusive) in ascending order, from - 1 if none
+    private int lowerIndex(int value, boolean inclusive) {
+        int pos = Arrays.binarySearch(elements, from, to, value);
+        return pos >= 0 ? (inclusive ? pos : pos - 1) : ~pos - 1;
+    }
+
+    // Index of the least element greater than value (or equal if inclusive) in ascending order, to if none
+    private int higherIndex(int value, boolean inclusive) {
+        int pos = Arrays.binarySearch(elements, from, to, value);
+        return pos >= 0 ? (inclusive ? pos : pos + 1) : ~pos;
+    }
+}
@@ -0,0 +1,281 @@
+package ru.ifmo.rain.vozleev;
+
+import java.util.*;
+
+/**
+ * Immutable sorted set of {@code long} values backed by a sorted {@code long[]}, stored values are not boxed.
+ * <p>
+ * Views share the array of their parent and keep {@code [from, to)} bounds and direction,
+ * so range and descending views are created in O(log n) and copy nothing.
+ * Boxed {@link NavigableSet} methods delegate to the primitive ones.
+ */
+public class LongArraySet extends AbstractSet<Long> implements NavigableSet<Long> {
+
+    private static final int PARALLEL_SORT_THRESHOLD = 1 << 16;
+
+    private final long[] elements;
+    private final int from;
+    private final int to;
+    private final boolean descending;
+
+    public LongArraySet() {
+        this(new long[0], 0, 0, false);
+    }
+
+    public LongArraySet(long... values) {
+        elements = distinct(values.clone());
+        from = 0;
+        to = elements.length;
+        descending = false;
+    }
+
+    public LongArraySet(Collection<? extends Long> other) {
+        if (other instanceof LongArraySet && !((LongArraySet) other).descending) {
+            LongArraySet set = (LongArraySet) other;
+            elements = Arrays.copyOfRange(set.elements, set.from, set.to);
+        } else {
+            long[] values = new long[other.size()];
+            int size = 0;
+            for (Long value : other) {
+                values[size++] = value;
+            }
+            elements = distinct(values);
+        }
+        from = 0;
+        to = elements.length;
+        descending = false;
+    }
+
+    private LongArraySet(long[] elements, int from, int to, boolean descending) {
+        this.elements = elements;
+        this.from = from;
+        this.to = to;
+        this.descending = descending;
+    }
+
+    private static long[] distinct(long[] values) {
+        if (values.length >= PARALLEL_SORT_THRESHOLD) {
+            Arrays.parallelSort(values);
+        } else {
+            Arrays.sort(values);
+        }
+        int size = Math.min(values.length, 1);
+        for (int i = 1; i < values.length; i++) {
+            if (values[size - 1] != values[i]) {
+                values[size++] = values[i];
+            }
+        }
+        return size == values.length ? values : Arrays.copyOf(values, size);
+    }
+
+    public boolean contains(long value) {
+        return Arrays.binarySearch(elements, from, to, value) >= 0;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof Long && contains(((Long) o).longValue());
+    }
+
+    /**
+     * Returns the number of elements preceding {@code value} in the order of this set.
+     */
+    public int rank(long value) {
+        return descending ? to - lowerIndex(value, true) - 1 : higherIndex(value, true) - from;
+    }
+
+    @Override
+    public int size() {
+        return to - from;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 0;
+        for (int i = from; i < to; i++) {
+            hash += Long.hashCode(elements[i]);
+        }
+        return hash;
+    }
+
+    /**
+     * Returns the elements in the order of this set.
+     */
+    public long[] toLongArray() {
+        long[] values = Arrays.copyOfRange(elements, from, to);
+        if (descending) {
+            for (int i = 0, j = values.length - 1; i < j; i++, j--) {
+                long value = values[i];
+                values[i] = values[j];
+                values[j] = value;
+            }
+        }
+        return values;
+    }
+
+    @Override
+    public PrimitiveIterator.OfLong iterator() {
+        return new OfLong(descending);
+    }
+
+    @Override
+    public PrimitiveIterator.OfLong descendingIterator() {
+        return new OfLong(!descending);
+    }
+
+    private class OfLong implements PrimitiveIterator.OfLong {
+        private final boolean backward;
+        private int next;
+
+        private OfLong(boolean backward) {
+            this.backward = backward;
+            next = backward ? to - 1 : from;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return backward ? next >= from : next < to;
+        }
+
+        @Override
+        public long nextLong() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return elements[backward ? next-- : next++];
+        }
+    }
+
+    @Override
+    public Comparator<? super Long> comparator() {
+        return descending ? Collections.reverseOrder() : null;
+    }
+
+    public long firstLong() {
+        checkNonEmpty();
+        return elements[descending ? to - 1 : from];
+    }
+
+    public long lastLong() {
+        checkNonEmpty();
+        return elements[descending ? from : to - 1];
+    }
+
+    @Override
+    public Long first() {
+        return firstLong();
+    }
+
+    @Override
+    public Long last() {
+        return lastLong();
+    }
+
+    @Override
+    public Long lower(Long value) {
+        return descending ? at(higherIndex(value, false)) : at(lowerIndex(value, false));
+    }
+
+    @Override
+    public Long floor(Long value) {
+        return descending ? at(higherIndex(value, true)) : at(lowerIndex(value, true));
+    }
+
+    @Override
+    public Long ceiling(Long value) {
+        return descending ? at(lowerIndex(value, true)) : at(higherIndex(value, true));
+    }
+
+    @Override
+    public Long higher(Long value) {
+        return descending ? at(lowerIndex(value, false)) : at(higherIndex(value, false));
+    }
+
+    @Override
+    public Long pollFirst() {
+        throw new UnsupportedOperationException("LongArraySet is immutable");
+    }
+
+    @Override
+    public Long pollLast() {
+        throw new UnsupportedOperationException("LongArraySet is immutable");
+    }
+
+    @Override
+    public LongArraySet descendingSet() {
+        return new LongArraySet(elements, from, to, !descending);
+    }
+
+    public LongArraySet subSet(long fromElement, boolean fromInclusive, long toElement, boolean toInclusive) {
+        if (descending ? fromElement < toElement : fromElement > toElement) {
+            throw new IllegalArgumentException("fromElement > toElement");
+        }
+        return descending
+                ? view(higherIndex(toElement, toInclusive), lowerIndex(fromElement, fromInclusive) + 1)
+                : view(higherIndex(fromElement, fromInclusive), lowerIndex(toElement, toInclusive) + 1);
+    }
+
+    public LongArraySet headSet(long toElement, boolean inclusive) {
+        return descending ? view(higherIndex(toElement, inclusive), to) : view(from, lowerIndex(toElement, inclusive) + 1);
+    }
+
+    public LongArraySet tailSet(long fromElement, boolean inclusive) {
+        return descending ? view(from, lowerIndex(fromElement, inclusive) + 1) : view(higherIndex(fromElement, inclusive), to);
+    }
+
+    @Override
+    public LongArraySet subSet(Long fromElement, boolean fromInclusive, Long toElement, boolean toInclusive) {
+        return subSet(fromElement.longValue(), fromInclusive, toElement.longValue(), toInclusive);
+    }
+
+    @Override
+    public LongArraySet headSet(Long toElement, boolean inclusive) {
+        return headSet(toElement.longValue(), inclusive);
+    }
+
+    @Override
+    public LongArraySet tailSet(Long fromElement, boolean inclusive) {
+        return tailSet(fromElement.longValue(), inclusive);
+    }
+
+    @Override
+    public LongArraySet subSet(Long fromElement, Long toElement) {
+        return subSet(fromElement, true, toElement, false);
+    }
+
+    @Override
+    public LongArraySet headSet(Long toElement) {
+        return headSet(toElement, false);
+    }
+
+    @Override
+    public LongArraySet tailSet(Long fromElement) {
+        return tailSet(fromElement, true);
+    }
+
+    private void checkNonEmpty() {
+        if (from == to) {
+            throw new NoSuchElementException();
+        }
+    }
+
+    private LongArraySet view(int fromIndex, int toIndex) {
+        return new LongArraySet(elements, fromIndex, Math.max(fromIndex, toIndex), descending);
+    }
+
+    private Long at(int index) {
+        return from <= index && index < to ? elements[index] : null;
+    }
+
+    // Index of the greatest element less than value (or equal if inclusive) in ascending order, from - 1 if none
+    private int lowerIndex(long value, boolean inclusive) {
+        int pos = Arrays.binarySearch(elements, from, to, value);
+        return pos >= 0 ? (inclusive ? pos : pos - 1) : ~pos - 1;
+    }
+
+    // Index of the least element greater than value (or equal if inclusive) in ascending order, to if none
+    private int higherIndex(long value, boolean inclusive) {
+        int pos = Arrays.binarySearch(elements, from, to, value);
+        return pos >= 0 ? (inclusive ? pos : pos + 1) : ~pos;
+    }
+}
@@ -0,0 +1,497 @@
+package ru.ifmo.rain.vozleev;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Mutable sorted set built from immutable {@link ArraySet} runs.
+ * <p>
+ * Inserts and deletes go to a small write buffer, which is turned into a new run when it reaches
+ * {@code bufferLimit} entries. A run holds live elements and tombstones of deleted ones, newer runs shadow older ones.
+ * Runs of about the same size, up to a factor of {@code TIER_FACTOR}, form a tier, and {@code TIER_FANOUT} adjacent
+ * runs of one tier are merged into one by a background thread. Tombstones are dropped when the oldest run is merged.
+ * Lookups check the buffer and then runs from newest to oldest, iteration merges all of them and skips deleted elements.
+ * <p>
+ * Updates must come from one thread at a time, as with {@link TreeSet}. Iterators work on a snapshot.
+ * Range views filter the merge of the same sources, restricted by {@link ArraySet} and buffer views,
+ * so {@link #first()}, {@link #last()} and iteration from a bound cost a logarithmic search per run.
+ * All sets share one daemon compaction thread, so merges of one set never overlap.
+ */
+public class LsmArraySet<T> extends AbstractSet<T> implements SortedSet<T>, AutoCloseable {
+
+    private static final int DEFAULT_BUFFER_LIMIT = 1 << 12;
+    private static final int TIER_FACTOR = 4;
+    private static final int TIER_FANOUT = 4;
+
+    private static final ExecutorService COMPACTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "lsm-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Comparator<? super T> comparator;
+    private final int bufferLimit;
+    // true for inserted elements, false for deleted ones
+    private final NavigableMap<T, Boolean> buffer;
+    private volatile boolean closed;
+    private final Object lock = new Object();
+    // Newest run first, replaced as a whole under lock
+    private volatile List<Run<T>> runs = Collections.emptyList();
+    private int size;
+
+    private static class Run<T> {
+        private final ArraySet<T> live;
+        private final ArraySet<T> deleted;
+
+        private Run(ArraySet<T> live, ArraySet<T> deleted) {
+            this.live = live;
+            this.deleted = deleted;
+        }
+
+        private int size() {
+            return live.size() + deleted.size();
+        }
+
+        private int tier() {
+            int tier = 0;
+            for (int size = size(); size >= TIER_FACTOR; size /= TIER_FACTOR) {
+                tier++;
+            }
+            return tier;
+        }
+
+        // Elements of this run shadow elements of older
+        private Run<T> over(Run<T> older, boolean oldest) {
+            ArraySet<T> merged = live.union(older.live.difference(deleted));
+            if (oldest) {
+                return new Run<>(merged, new ArraySet<>(live.comparator()));
+            }
+            return new Run<>(merged, deleted.union(older.deleted.difference(live)));
+        }
+    }
+
+    public LsmArraySet() {
+        this(null);
+    }
+
+    public LsmArraySet(Comparator<? super T> comparator) {
+        this(comparator, DEFAULT_BUFFER_LIMIT);
+    }
+
+    public LsmArraySet(Comparator<? super T> comparator, int bufferLimit) {
+        if (bufferLimit <= 0) {
+            throw new IllegalArgumentException("Buffer limit must be positive");
+        }
+        this.comparator = comparator;
+        this.bufferLimit = bufferLimit;
+        this.buffer = new TreeMap<>(comparator);
+    }
+
+    @Override
+    public Comparator<? super T> comparator() {
+        return comparator;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean contains(Object o) {
+        T element = (T) o;
+        Boolean buffered = buffer.get(element);
+        if (buffered != null) {
+            return buffered;
+        }
+        for (Run<T> run : runs) {
+            if (run.live.contains(element)) {
+                return true;
+            } else if (run.deleted.contains(element)) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean add(T element) {
+        if (contains(element)) {
+            return false;
+        }
+        put(element, true);
+        size++;
+        return true;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        if (!contains(o)) {
+            return false;
+        }
+        @SuppressWarnings("unchecked")
+        T element = (T) o;
+        put(element, false);
+        size--;
+        return true;
+    }
+
+    private void put(T element, boolean live) {
+        buffer.put(element, live);
+        if (buffer.size() >= bufferLimit) {
+            flush();
+        }
+    }
+
+    /**
+     * Turns the write buffer into a new run and schedules merging of runs.
+     */
+    public void flush() {
+        if (buffer.isEmpty()) {
+            return;
+        }
+        List<T> live = new ArrayList<>();
+        List<T> deleted = new ArrayList<>();
+        for (Map.Entry<T, Boolean> entry : buffer.entrySet()) {
+            (entry.getValue() ? live : deleted).add(entry.getKey());
+        }
+        buffer.clear();
+        Run<T> run = new Run<>(new ArraySet<>(live, comparator), new ArraySet<>(deleted, comparator));
+        synchronized (lock) {
+            List<Run<T>> updated = new ArrayList<>(runs.size() + 1);
+            updated.add(run);
+            updated.addAll(runs);
+            runs = updated;
+        }
+        if (!closed) {
+            COMPACTOR.execute(this::compact);
+        }
+    }
+
+    /**
+     * Returns contents of the set as a single {@link ArraySet}.
+     */
+    public ArraySet<T> snapshot() {
+        List<T> elements = new ArrayList<>(size);
+        forEach(elements::add);
+        return new ArraySet<>(elements, comparator);
+    }
+
+    // Merges groups of TIER_FANOUT adjacent runs of one tier until there are none
+    private void compact() {
+        try {
+            while (true) {
+                List<Run<T>> current = runs;
+                int start = -1;
+                for (int i = 0, length = 1; i + 1 < current.size() && start < 0; i++) {
+                    length = current.get(i).tier() == current.get(i + 1).tier() ? length + 1 : 1;
+                    if (length == TIER_FANOUT) {
+                        start = i + 2 - TIER_FANOUT;
+                    }
+                }
+                if (start < 0) {
+                    return;
+                }
+
+                int end = start + TIER_FANOUT;
+                Run<T> merged = current.get(end - 1);
+                for (int i = end - 2; i >= start; i--) {
+                    merged = current.get(i).over(merged, end == current.size());
+                }
+
+                synchronized (lock) {
+                    // Flushes only add runs in front, so the merged ones are shifted by the number of new runs
+                    List<Run<T>> latest = runs;
+                    int shift = latest.size() - current.size();
+                    List<Run<T>> updated = new ArrayList<>(latest.subList(0, start + shift));
+                    updated.add(merged);
+                    updated.addAll(latest.subList(end + shift, latest.size()));
+                    runs = updated;
+                }
+            }
+        } catch (RuntimeException e) {
+            System.err.println("ERROR! Can't merge runs: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return iterator(null, false, null, false, false);
+    }
+
+    @Override
+    public T first() {
+        return first(iterator());
+    }
+
+    @Override
+    public T last() {
+        return first(iterator(null, false, null, false, true));
+    }
+
+    @Override
+    public SortedSet<T> subSet(T fromElement, T toElement) {
+        return new Range(null, false, null, false).subSet(fromElement, toElement);
+    }
+
+    @Override
+    public SortedSet<T> headSet(T toElement) {
+        return new Range(null, false, null, false).headSet(toElement);
+    }
+
+    @Override
+    public SortedSet<T> tailSet(T fromElement) {
+        return new Range(null, false, null, false).tailSet(fromElement);
+    }
+
+    private static <T> T first(Iterator<T> iterator) {
+        if (!iterator.hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return iterator.next();
+    }
+
+    // Merges elements of [low, high) in the given direction, a bound is ignored if its flag is not set
+    private Iterator<T> iterator(T low, boolean hasLow, T high, boolean hasHigh, boolean descending) {
+        List<Run<T>> snapshot = runs;
+        // Sources are ordered by age, buffer first, so of equal heads the newest is polled first
+        List<Source<T>> sources = new ArrayList<>();
+        NavigableMap<T, Boolean> buffered = buffer;
+        if (hasLow) {
+            buffered = buffered.tailMap(low, true);
+        }
+        if (hasHigh) {
+            buffered = buffered.headMap(high, false);
+        }
+        List<T> live = new ArrayList<>();
+        List<T> deleted = new ArrayList<>();
+        for (Map.Entry<T, Boolean> entry : (descending ? buffered.descendingMap() : buffered).entrySet()) {
+            (entry.getValue() ? live : deleted).add(entry.getKey());
+        }
+        sources.add(new Source<>(live.iterator(), 0, true));
+        sources.add(new Source<>(deleted.iterator(), 0, false));
+        for (int i = 0; i < snapshot.size(); i++) {
+            sources.add(new Source<>(range(snapshot.get(i).live, low, hasLow, high, hasHigh, descending), i + 1, true));
+            sources.add(new Source<>(range(snapshot.get(i).deleted, low, hasLow, high, hasHigh, descending), i + 1, false));
+        }
+        return new MergingIterator(sources, descending);
+    }
+
+    private static <T> Iterator<T> range(NavigableSet<T> set, T low, boolean hasLow, T high, boolean hasHigh, boolean descending) {
+        if (hasLow) {
+            set = set.tailSet(low, true);
+        }
+        if (hasHigh) {
+            set = set.headSet(high, false);
+        }
+        return descending ? set.descendingIterator() : set.iterator();
+    }
+
+    /**
+     * Backed view of elements in {@code [low, high)}, a bound is absent if its flag is not set.
+     * Like views of {@link TreeSet}, it rejects insertion of elements out of range and counts its size by iteration.
+     */
+    private class Range extends AbstractSet<T> implements SortedSet<T> {
+        private final T low;
+        private final boolean hasLow;
+        private final T high;
+        private final boolean hasHigh;
+
+        private Range(T low, boolean hasLow, T high, boolean hasHigh) {
+            this.low = low;
+            this.hasLow = hasLow;
+            this.high = high;
+            this.hasHigh = hasHigh;
+        }
+
+        private boolean inRange(T element) {
+            return (!hasLow || compare(element, low) >= 0) && (!hasHigh || compare(element, high) < 0);
+        }
+
+        // As in TreeSet views, the high bound of a nested view may be equal to the exclusive high of this one
+        private boolean inClosedRange(T element) {
+            return (!hasLow || compare(element, low) >= 0) && (!hasHigh || compare(element, high) <= 0);
+        }
+
+        @Override
+        public Comparator<? super T> comparator() {
+            return comparator;
+        }
+
+        @Override
+        public int size() {
+            int size = 0;
+            for (Iterator<T> it = iterator(); it.hasNext(); it.next()) {
+                size++;
+            }
+            return size;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return !iterator().hasNext();
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean contains(Object o) {
+            return inRange((T) o) && LsmArraySet.this.contains(o);
+        }
+
+        @Override
+        public boolean add(T element) {
+            if (!inRange(element)) {
+                throw new IllegalArgumentException("Element is out of range");
+            }
+            return LsmArraySet.this.add(element);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean remove(Object o) {
+            return inRange((T) o) && LsmArraySet.this.remove(o);
+        }
+
+        @Override
+        public Iterator<T> iterator() {
+            return LsmArraySet.this.iterator(low, hasLow, high, hasHigh, false);
+        }
+
+        @Override
+        public T first() {
+            return LsmArraySet.first(iterator());
+        }
+
+        @Override
+        public T last() {
+            return LsmArraySet.first(LsmArraySet.this.iterator(low, hasLow, high, hasHigh, true));
+        }
+
+        @Override
+        public SortedSet<T> subSet(T fromElement, T toElement) {
+            if (compare(fromElement, toElement) > 0) {
+                throw new IllegalArgumentException("fromElement > toElement");
+            }
+            return tailSet(fromElement).headSet(toElement);
+        }
+
+        @Override
+        public SortedSet<T> headSet(T toElement) {
+            if (!inClosedRange(toElement)) {
+                throw new IllegalArgumentException("toElement is out of range");
+            }
+            return new Range(low, hasLow, toElement, true);
+        }
+
+        @Override
+        public SortedSet<T> tailSet(T fromElement) {
+            if (!inRange(fromElement)) {
+                throw new IllegalArgumentException("fromElement is out of range");
+            }
+            return new Range(fromElement, true, high, hasHigh);
+        }
+    }
+
+    private static class Source<T> {
+        private final Iterator<T> iterator;
+        private final int age;
+        private final boolean live;
+        private T head;
+
+        private Source(Iterator<T> iterator, int age, boolean live) {
+            this.iterator = iterator;
+            this.age = age;
+            this.live = live;
+        }
+
+        private boolean advance() {
+            if (!iterator.hasNext()) {
+                return false;
+            }
+            head = iterator.next();
+            return true;
+        }
+    }
+
+    private class MergingIterator implements Iterator<T> {
+        private final PriorityQueue<Source<T>> heads;
+        private T next;
+        private boolean hasNext;
+        private T last;
+        private boolean canRemove;
+
+        private MergingIterator(List<Source<T>> sources, boolean descending) {
+            heads = new PriorityQueue<>(Math.max(1, sources.size()), (a, b) -> {
+                int cmp = descending ? compare(b.head, a.head) : compare(a.head, b.head);
+                return cmp != 0 ? cmp : Integer.compare(a.age, b.age);
+            });
+            for (Source<T> source : sources) {
+                if (source.advance()) {
+                    heads.add(source);
+                }
+            }
+            findNext();
+        }
+
+        // Takes the newest version of the least element and skips older versions of it
+        private void findNext() {
+            hasNext = false;
+            while (!heads.isEmpty() && !hasNext) {
+                Source<T> newest = heads.poll();
+                T element = newest.head;
+                hasNext = newest.live;
+                next = element;
+                if (newest.advance()) {
+                    heads.add(newest);
+                }
+                while (!heads.isEmpty() && compare(heads.peek().head, element) == 0) {
+                    Source<T> older = heads.poll();
+                    if (older.advance()) {
+                        heads.add(older);
+                    }
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return hasNext;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext) {
+                throw new NoSuchElementException();
+            }
+            last = next;
+            canRemove = true;
+            findNext();
+            return last;
+        }
+
+        @Override
+        public void remove() {
+            if (!canRemove) {
+                throw new IllegalStateException();
+            }
+            canRemove = false;
+            LsmArraySet.this.remove(last);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private int compare(T a, T b) {
+        return comparator == null ? ((Comparable<? super T>) a).compareTo(b) : comparator.compare(a, b);
+    }
+
+    /**
+     * Stops scheduling background merges, the set stays usable but is no longer compacted.
+     * A merge that is already queued still runs.
+     */
+    @Override
+    public void close() {
+        closed = true;
+    }
+}
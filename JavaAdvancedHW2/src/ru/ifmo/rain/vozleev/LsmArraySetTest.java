@@ -0,0 +1,101 @@
+package ru.ifmo.rain.vozleev;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.*;
+
+/**
+ * Checks {@link LsmArraySet} against {@link TreeSet} under random updates that flush and merge many runs.
+ */
+public class LsmArraySetTest {
+    private static final Random RANDOM = new Random(9182736450192837L);
+
+    @Test
+    public void test01_updates() {
+        try (LsmArraySet<Integer> set = new LsmArraySet<>(null, 8)) {
+            check(set, new TreeSet<>(), 20000, 1000);
+        }
+    }
+
+    @Test
+    public void test02_comparator() {
+        Comparator<Integer> reversed = Comparator.reverseOrder();
+        try (LsmArraySet<Integer> set = new LsmArraySet<>(reversed, 5)) {
+            check(set, new TreeSet<>(reversed), 10000, 300);
+        }
+    }
+
+    @Test
+    public void test03_views() {
+        try (LsmArraySet<Integer> set = new LsmArraySet<>(null, 16)) {
+            TreeSet<Integer> expected = new TreeSet<>();
+            check(set, expected, 5000, 500);
+            for (int i = 0; i < 200; i++) {
+                int low = RANDOM.nextInt(500);
+                int high = low + RANDOM.nextInt(500 - low + 1);
+                assertSame(expected.subSet(low, high), set.subSet(low, high));
+                assertSame(expected.headSet(high), set.headSet(high));
+                assertSame(expected.tailSet(low), set.tailSet(low));
+                assertSame(expected.tailSet(low).headSet(high), set.tailSet(low).headSet(high));
+            }
+
+            // Updates through a view reach the set, elements outside the view are rejected
+            SortedSet<Integer> view = set.subSet(100, 200);
+            view.add(150);
+            expected.add(150);
+            Assert.assertTrue(set.contains(150));
+            Assert.assertFalse(view.remove(300));
+            assertSame(expected, set);
+            try {
+                view.add(250);
+                Assert.fail("Element out of the view added");
+            } catch (IllegalArgumentException ignored) {
+            }
+        }
+    }
+
+    @Test
+    public void test04_iteratorRemove() {
+        try (LsmArraySet<Integer> set = new LsmArraySet<>(null, 4)) {
+            TreeSet<Integer> expected = new TreeSet<>();
+            check(set, expected, 2000, 200);
+            for (Iterator<Integer> it = set.iterator(); it.hasNext(); ) {
+                if (it.next() % 3 == 0) {
+                    it.remove();
+                }
+            }
+            expected.removeIf(element -> element % 3 == 0);
+            assertSame(expected, set);
+            Assert.assertEquals(new ArrayList<>(expected), new ArrayList<>(set.snapshot()));
+        }
+    }
+
+    // Applies the same random adds and removes to both sets and compares them along the way
+    private static void check(LsmArraySet<Integer> set, TreeSet<Integer> expected, int operations, int range) {
+        for (int i = 0; i < operations; i++) {
+            Integer element = RANDOM.nextInt(range);
+            if (RANDOM.nextInt(3) == 0) {
+                Assert.assertEquals(expected.remove(element), set.remove(element));
+            } else {
+                Assert.assertEquals(expected.add(element), set.add(element));
+            }
+            Integer probe = RANDOM.nextInt(range);
+            Assert.assertEquals(expected.contains(probe), set.contains(probe));
+            if (i % 997 == 0) {
+                assertSame(expected, set);
+            }
+        }
+        set.flush();
+        assertSame(expected, set);
+    }
+
+    private static void assertSame(SortedSet<Integer> expected, SortedSet<Integer> actual) {
+        Assert.assertEquals(expected.size(), actual.size());
+        Assert.assertEquals(new ArrayList<>(expected), new ArrayList<>(actual));
+        if (!expected.isEmpty()) {
+            Assert.assertEquals(expected.first(), actual.first());
+            Assert.assertEquals(expected.last(), actual.last());
+        }
+    }
+}
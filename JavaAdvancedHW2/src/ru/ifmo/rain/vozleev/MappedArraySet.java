@@ -0,0 +1,275 @@
+package ru.ifmo.rain.vozleev;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Immutable sorted set of fixed-width keys read straight from a memory-mapped file.
+ * <p>
+ * The file is a header {@code magic, version, type, width, count} padded to {@code HEADER} bytes followed by
+ * {@code count} sorted distinct keys of {@code width} bytes in big-endian order. Opening a file maps it and reads
+ * only the header, the keys stay in the page cache, which is shared by all processes that map the file.
+ * Supported keys are {@code long} and {@code int} in natural order and {@code byte[]} of the same length
+ * in unsigned lexicographic order. Views share the mapping and keep {@code [from, to)} bounds and direction,
+ * like {@link ArraySet}. Files are limited to 2 GiB.
+ * <p>
+ * A {@code byte[]} key is read into a new array on every access, so {@link #hashCode()} hashes keys by contents
+ * like {@link Arrays#hashCode(byte[])}. {@link #contains}, and so {@link #equals}, compares them by contents.
+ */
+public class MappedArraySet<T> extends AbstractIndexedSet<T> {
+
+    private static final int MAGIC = 0x41534554;
+    private static final int VERSION = 1;
+    private static final int HEADER = 64;
+
+    private final ByteBuffer buffer;
+    private final Codec<T> codec;
+    private final int width;
+
+    // Reads and compares keys in place, without creating them
+    private abstract static class Codec<T> {
+        private final int type;
+        // Width of every key, zero if any width is allowed
+        private final int width;
+        private final Comparator<? super T> comparator;
+
+        private Codec(int type, int width, Comparator<? super T> comparator) {
+            this.type = type;
+            this.width = width;
+            this.comparator = comparator;
+        }
+
+        abstract T read(ByteBuffer buffer, int offset, int width);
+
+        abstract int compare(ByteBuffer buffer, int offset, int width, T key);
+
+        abstract boolean accepts(Object key, int width);
+
+        abstract int hash(T key);
+    }
+
+    private static final Codec<Long> LONGS = new Codec<>(0, Long.BYTES, Comparator.naturalOrder()) {
+        @Override
+        Long read(ByteBuffer buffer, int offset, int width) {
+            return buffer.getLong(offset);
+        }
+
+        @Override
+        int compare(ByteBuffer buffer, int offset, int width, Long key) {
+            return Long.compare(buffer.getLong(offset), key);
+        }
+
+        @Override
+        boolean accepts(Object key, int width) {
+            return key instanceof Long;
+        }
+
+        @Override
+        int hash(Long key) {
+            return key.hashCode();
+        }
+    };
+
+    private static final Codec<Integer> INTS = new Codec<>(1, Integer.BYTES, Comparator.naturalOrder()) {
+        @Override
+        Integer read(ByteBuffer buffer, int offset, int width) {
+            return buffer.getInt(offset);
+        }
+
+        @Override
+        int compare(ByteBuffer buffer, int offset, int width, Integer key) {
+            return Integer.compare(buffer.getInt(offset), key);
+        }
+
+        @Override
+        boolean accepts(Object key, int width) {
+            return key instanceof Integer;
+        }
+
+        @Override
+        int hash(Integer key) {
+            return key.hashCode();
+        }
+    };
+
+    private static final Codec<byte[]> BYTES = new Codec<>(2, 0, Arrays::compareUnsigned) {
+        @Override
+        byte[] read(ByteBuffer buffer, int offset, int width) {
+            byte[] key = new byte[width];
+            buffer.duplicate().position(offset).get(key);
+            return key;
+        }
+
+        @Override
+        int compare(ByteBuffer buffer, int offset, int width, byte[] key) {
+            for (int i = 0; i < width; i++) {
+                int cmp = Integer.compare(Byte.toUnsignedInt(buffer.get(offset + i)), Byte.toUnsignedInt(key[i]));
+                if (cmp != 0) {
+                    return cmp;
+                }
+            }
+            return 0;
+        }
+
+        @Override
+        boolean accepts(Object key, int width) {
+            return key instanceof byte[] && ((byte[]) key).length == width;
+        }
+
+        @Override
+        int hash(byte[] key) {
+            return Arrays.hashCode(key);
+        }
+    };
+
+    private MappedArraySet(ByteBuffer buffer, Codec<T> codec, int width, int from, int to, boolean descending) {
+        super(codec.comparator, from, to, descending);
+        this.buffer = buffer;
+        this.codec = codec;
+        this.width = width;
+    }
+
+    /**
+     * Writes distinct {@code keys} in ascending order to {@code file}.
+     */
+    public static void writeLongs(Path file, Collection<Long> keys) throws IOException {
+        long[] sorted = new LongArraySet(keys).toLongArray();
+        write(file, LONGS, Long.BYTES, sorted.length, out -> {
+            for (long key : sorted) {
+                out.writeLong(key);
+            }
+        });
+    }
+
+    /**
+     * Writes distinct {@code keys} in ascending order to {@code file}.
+     */
+    public static void writeInts(Path file, Collection<Integer> keys) throws IOException {
+        int[] sorted = new IntArraySet(keys).toIntArray();
+        write(file, INTS, Integer.BYTES, sorted.length, out -> {
+            for (int key : sorted) {
+                out.writeInt(key);
+            }
+        });
+    }
+
+    /**
+     * Writes distinct {@code keys} of {@code width} bytes in unsigned lexicographic order to {@code file}.
+     *
+     * @throws IllegalArgumentException if some key is not {@code width} bytes long
+     */
+    public static void writeBytes(Path file, Collection<byte[]> keys, int width) throws IOException {
+        for (byte[] key : keys) {
+            if (key.length != width) {
+                throw new IllegalArgumentException("Key of " + key.length + " bytes, expected " + width);
+            }
+        }
+        ArraySet<byte[]> sorted = new ArraySet<>(keys, BYTES.comparator);
+        write(file, BYTES, width, sorted.size(), out -> {
+            for (byte[] key : sorted) {
+                out.write(key);
+            }
+        });
+    }
+
+    private interface KeyWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    // Writes a temporary file and moves it over the target, so readers never map a partial file
+    private static void write(Path file, Codec<?> codec, int width, int count, KeyWriter keys) throws IOException {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(codec.type);
+                out.writeInt(width);
+                out.writeLong(count);
+                out.write(new byte[HEADER - out.size()]);
+                keys.write(out);
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+    }
+
+    public static MappedArraySet<Long> openLongs(Path file) throws IOException {
+        return open(file, LONGS);
+    }
+
+    public static MappedArraySet<Integer> openInts(Path file) throws IOException {
+        return open(file, INTS);
+    }
+
+    public static MappedArraySet<byte[]> openBytes(Path file) throws IOException {
+        return open(file, BYTES);
+    }
+
+    private static <T> MappedArraySet<T> open(Path file, Codec<T> codec) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Set file is larger than 2 GiB: " + file);
+            }
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.limit() < HEADER || buffer.getInt(0) != MAGIC) {
+                throw new IOException("Not a set file: " + file);
+            }
+            if (buffer.getInt(4) != VERSION) {
+                throw new IOException("Unsupported set file version " + buffer.getInt(4) + ": " + file);
+            }
+            if (buffer.getInt(8) != codec.type) {
+                throw new IOException("Set file holds keys of another type: " + file);
+            }
+            int width = buffer.getInt(12);
+            long count = buffer.getLong(16);
+            if (width <= 0 || codec.width != 0 && width != codec.width) {
+                throw new IOException("Set file holds keys of " + width + " bytes: " + file);
+            }
+            if (count < 0 || HEADER + count * width != buffer.limit()) {
+                throw new IOException("Set file is corrupted: " + file);
+            }
+            return new MappedArraySet<>(buffer, codec, width, 0, (int) count, false);
+        }
+    }
+
+    @Override
+    T element(int index) {
+        return codec.read(buffer, HEADER + index * width, width);
+    }
+
+    @Override
+    int compareAt(int index, T key) {
+        return codec.compare(buffer, HEADER + index * width, width, key);
+    }
+
+    @Override
+    MappedArraySet<T> view(int from, int to, boolean descending) {
+        return new MappedArraySet<>(buffer, codec, width, from, to, descending);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean contains(Object o) {
+        return codec.accepts(o, width) && search((T) o) >= 0;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 0;
+        for (int i = from; i < to; i++) {
+            hash += codec.hash(element(i));
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,184 @@
+package ru.ifmo.rain.vozleev;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Checks {@link MappedArraySet} against {@link TreeSet} and rejection of files it can't read.
+ */
+public class MappedArraySetTest {
+    private static final Random RANDOM = new Random(6574839201928374L);
+    private static final Comparator<byte[]> UNSIGNED = Arrays::compareUnsigned;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void test01_longs() throws IOException {
+        List<Long> keys = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            keys.add(RANDOM.nextLong() % 5000);
+        }
+        keys.add(Long.MIN_VALUE);
+        keys.add(Long.MAX_VALUE);
+        Path file = file();
+        MappedArraySet.writeLongs(file, keys);
+        List<Long> probes = new ArrayList<>(keys.subList(0, 100));
+        for (int i = 0; i < 100; i++) {
+            probes.add(RANDOM.nextLong() % 6000);
+        }
+        check(MappedArraySet.openLongs(file), new TreeSet<>(keys), probes);
+    }
+
+    @Test
+    public void test02_ints() throws IOException {
+        List<Integer> keys = new ArrayList<>();
+        List<Integer> probes = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            keys.add(RANDOM.nextInt(3000) - 1500);
+            probes.add(RANDOM.nextInt(3200) - 1600);
+        }
+        Path file = file();
+        MappedArraySet.writeInts(file, keys);
+        check(MappedArraySet.openInts(file), new TreeSet<>(keys), probes);
+
+        MappedArraySet.writeInts(file, List.of());
+        NavigableSet<Integer> empty = MappedArraySet.openInts(file);
+        Assert.assertTrue(empty.isEmpty());
+        Assert.assertNull(empty.ceiling(0));
+    }
+
+    @Test
+    public void test03_bytes() throws IOException {
+        List<byte[]> keys = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            keys.add(bytes(3));
+        }
+        Path file = file();
+        MappedArraySet.writeBytes(file, keys, 3);
+        NavigableSet<byte[]> set = MappedArraySet.openBytes(file);
+        TreeSet<byte[]> expected = new TreeSet<>(UNSIGNED);
+        expected.addAll(keys);
+
+        List<byte[]> probes = new ArrayList<>(keys.subList(0, 50));
+        for (int i = 0; i < 50; i++) {
+            probes.add(bytes(3));
+        }
+        for (byte[] probe : probes) {
+            Assert.assertEquals(expected.contains(probe), set.contains(probe.clone()));
+            Assert.assertArrayEquals(expected.floor(probe), set.floor(probe));
+            Assert.assertArrayEquals(expected.higher(probe), set.higher(probe));
+        }
+        Assert.assertFalse(set.contains(new byte[2]));
+
+        // Keys are read into new arrays, but sets of equal contents are still equal
+        NavigableSet<byte[]> again = MappedArraySet.openBytes(file);
+        Assert.assertEquals(set.hashCode(), again.hashCode());
+        Assert.assertEquals(set, again);
+        Assert.assertEquals(set.headSet(keys.get(0), true), again.headSet(keys.get(0), true));
+    }
+
+    @Test
+    public void test04_damaged() throws IOException {
+        Path file = file();
+        MappedArraySet.writeLongs(file, Arrays.asList(1L, 2L, 3L));
+        byte[] valid = Files.readAllBytes(file);
+
+        assertDamaged(file, new byte[0]);
+        assertDamaged(file, Arrays.copyOf(valid, valid.length - 1));
+        assertDamaged(file, Arrays.copyOf(valid, valid.length + 8));
+        assertDamaged(file, withInt(valid, 0, 0x12345678));
+        assertDamaged(file, withInt(valid, 4, 2));
+        assertDamaged(file, withInt(valid, 12, 0));
+        assertDamaged(file, withInt(valid, 12, -8));
+        assertDamaged(file, ByteBuffer.wrap(withInt(valid, 12, 4)).putLong(16, 6).array());
+        assertDamaged(file, ByteBuffer.wrap(valid.clone()).putLong(16, -1).array());
+        assertDamaged(file, ByteBuffer.wrap(valid.clone()).putLong(16, Long.MAX_VALUE / 8).array());
+
+        // Keys of another type or width
+        Files.write(file, valid);
+        try {
+            MappedArraySet.openInts(file);
+            Assert.fail("Longs opened as ints");
+        } catch (IOException ignored) {
+        }
+        MappedArraySet.writeInts(file, List.of(1, 2));
+        assertDamaged(file, withInt(Files.readAllBytes(file), 8, 0));
+    }
+
+    @Test
+    public void test05_failedWrite() throws IOException {
+        // A directory at the target makes the final move fail, the temporary file must not stay behind
+        Path file = file();
+        Files.createDirectories(file.resolve("inside"));
+        try {
+            MappedArraySet.writeInts(file, List.of(1, 2, 3));
+            Assert.fail("Set written over a directory");
+        } catch (IOException ignored) {
+        }
+        Assert.assertFalse(Files.exists(file.resolveSibling(file.getFileName() + ".tmp")));
+
+        try {
+            MappedArraySet.writeBytes(file(), List.of(new byte[2], new byte[3]), 2);
+            Assert.fail("Key of a wrong width written");
+        } catch (IllegalArgumentException ignored) {
+        }
+    }
+
+    private static <T> void check(NavigableSet<T> actual, NavigableSet<T> expected, List<T> probes) {
+        Assert.assertEquals(expected.hashCode(), actual.hashCode());
+        check(actual, expected, probes, true);
+    }
+
+    private static <T> void check(NavigableSet<T> actual, NavigableSet<T> expected, List<T> probes, boolean views) {
+        Assert.assertEquals(new ArrayList<>(expected), new ArrayList<>(actual));
+        for (T probe : probes) {
+            Assert.assertEquals(expected.contains(probe), actual.contains(probe));
+            Assert.assertEquals(expected.lower(probe), actual.lower(probe));
+            Assert.assertEquals(expected.floor(probe), actual.floor(probe));
+            Assert.assertEquals(expected.ceiling(probe), actual.ceiling(probe));
+            Assert.assertEquals(expected.higher(probe), actual.higher(probe));
+        }
+        if (views) {
+            T bound = probes.get(RANDOM.nextInt(probes.size()));
+            boolean inclusive = RANDOM.nextBoolean();
+            check(actual.descendingSet(), expected.descendingSet(), probes, false);
+            check(actual.tailSet(bound, inclusive), expected.tailSet(bound, inclusive), probes, false);
+            check(actual.descendingSet().headSet(bound, inclusive), expected.descendingSet().headSet(bound, inclusive), probes, false);
+        }
+    }
+
+    private Path file() throws IOException {
+        return folder.newFolder().toPath().resolve("keys.set");
+    }
+
+    private static byte[] bytes(int length) {
+        byte[] bytes = new byte[length];
+        RANDOM.nextBytes(bytes);
+        bytes[0] &= 0x83;
+        return bytes;
+    }
+
+    private static byte[] withInt(byte[] bytes, int offset, int value) {
+        byte[] result = bytes.clone();
+        ByteBuffer.wrap(result).putInt(offset, value);
+        return result;
+    }
+
+    private static void assertDamaged(Path file, byte[] contents) throws IOException {
+        Files.write(file, contents);
+        try {
+            MappedArraySet.openLongs(file);
+            Assert.fail("Damaged set file opened");
+        } catch (IOException ignored) {
+        }
+    }
+}